@@ -1,12 +1,22 @@
 package io.bifroest.retentions;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+import io.bifroest.retentions.aggregation.AggregationKernel;
+import io.bifroest.retentions.aggregation.AggregationKernels;
 import io.bifroest.commons.model.Interval;
 import io.bifroest.commons.model.Metric;
-import io.bifroest.commons.statistics.aggregation.ValueAggregation;
 
 public class Aggregator {
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MAX_CHUNKS = 4 * Runtime.getRuntime().availableProcessors();
+
     private Aggregator() {
         // Do not instantiate.
     }
@@ -26,6 +36,131 @@ public class Aggregator {
     }
 
     public static MetricSet aggregate( String name, Iterable<Metric> metrics, Interval interval, long frequency, RetentionConfiguration retentions, boolean removeMetrics ) {
+        int size = checkedSize( interval, frequency );
+        AggregationKernel kernel = AggregationKernels.forPolicy( retentions.findPolicyForMetric( name ), size );
+
+        Iterator<Metric> iter = metrics.iterator();
+        while ( iter.hasNext() ) {
+            Metric metric = iter.next();
+            if ( interval.contains( metric.timestamp() ) ) {
+                kernel.consume( (int)( ( metric.timestamp() - interval.start() ) / frequency ), metric.value() );
+                if ( removeMetrics ) {
+                    iter.remove();
+                }
+            }
+        }
+
+        return toMetricSet( name, interval, frequency, kernel );
+    }
+
+    // Columnar variant: timestamps[i] and values[i] form one data point.
+    public static MetricSet aggregate( String name, long[] timestamps, double[] values, Interval interval, long frequency, RetentionConfiguration retentions ) {
+        return aggregate( name, MetricCursor.over( timestamps, values ), interval, frequency, retentions );
+    }
+
+    public static MetricSet aggregate( String name, MetricCursor metrics, Interval interval, long frequency, RetentionConfiguration retentions ) {
+        int size = checkedSize( interval, frequency );
+        AggregationKernel kernel = AggregationKernels.forPolicy( retentions.findPolicyForMetric( name ), size );
+
+        long start = interval.start();
+        while ( metrics.next() ) {
+            long timestamp = metrics.timestamp();
+            if ( interval.contains( timestamp ) ) {
+                kernel.consume( (int)( ( timestamp - start ) / frequency ), metrics.value() );
+            }
+        }
+
+        return toMetricSet( name, interval, frequency, kernel );
+    }
+
+    // Aggregates on the common ForkJoinPool if there are enough points.
+    public static MetricSet aggregateParallel( String name, long[] timestamps, double[] values, Interval interval, long frequency, RetentionConfiguration retentions ) {
+        return aggregateParallel( name, timestamps, values, interval, frequency, retentions, ForkJoinPool.commonPool(), PARALLEL_THRESHOLD );
+    }
+
+    // Splits the interval into frequency aligned chunks of at least threshold points and
+    // aggregates them on the executor. Timestamps must be sorted for this, otherwise
+    // (or if there are fewer than threshold points) we aggregate on the calling thread.
+    // Either way the result is the same as the one of the sequential aggregate.
+    public static MetricSet aggregateParallel( String name, long[] timestamps, double[] values, Interval interval, long frequency, RetentionConfiguration retentions,
+            Executor executor, int threshold ) {
+        int size = checkedSize( interval, frequency );
+        if ( timestamps.length != values.length ) {
+            throw new IllegalArgumentException( String.format(
+                    "got %d timestamps but %d values",
+                    timestamps.length,
+                    values.length
+                    ) );
+        }
+        int chunks = (int)Math.min( Math.min( timestamps.length / Math.max( 1, threshold ), size ), MAX_CHUNKS );
+        if ( chunks < 2 || !isSorted( timestamps ) ) {
+            return aggregate( name, timestamps, values, interval, frequency, retentions );
+        }
+
+        MetricPolicy policy = retentions.findPolicyForMetric( name );
+        List<CompletableFuture<AggregationKernel>> futures = new ArrayList<>( chunks );
+        for ( int chunk = 0; chunk < chunks; chunk++ ) {
+            final int firstSlot = (int)( (long)size * chunk / chunks );
+            final int lastSlot = (int)( (long)size * ( chunk + 1 ) / chunks );
+            futures.add( CompletableFuture.supplyAsync( () -> {
+                long chunkStart = interval.start() + firstSlot * frequency;
+                long chunkEnd = interval.start() + lastSlot * frequency;
+                int from = lowerBound( timestamps, chunkStart );
+                int to = lowerBound( timestamps, chunkEnd );
+                AggregationKernel kernel = AggregationKernels.forPolicy( policy, lastSlot - firstSlot );
+                for ( int i = from; i < to; i++ ) {
+                    kernel.consume( (int)( ( timestamps[i] - chunkStart ) / frequency ), values[i] );
+                }
+                return kernel;
+            }, executor ) );
+        }
+
+        MetricSet result = new MetricSet( name, interval, frequency );
+        for ( int chunk = 0; chunk < chunks; chunk++ ) {
+            int firstSlot = (int)( (long)size * chunk / chunks );
+            AggregationKernel kernel;
+            try {
+                kernel = futures.get( chunk ).join();
+            } catch ( CompletionException e ) {
+                if ( e.getCause() instanceof RuntimeException ) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw e;
+            }
+            for ( int i = 0; i < kernel.size(); i++ ) {
+                if ( kernel.hasValue( i ) ) {
+                    result.setValue( firstSlot + i, kernel.result( i ) );
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSorted( long[] timestamps ) {
+        for ( int i = 1; i < timestamps.length; i++ ) {
+            if ( timestamps[i - 1] > timestamps[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // index of the first timestamp >= key
+    private static int lowerBound( long[] timestamps, long key ) {
+        int low = 0;
+        int high = timestamps.length;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( timestamps[mid] < key ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int checkedSize( Interval interval, long frequency ) {
         if ( interval.start() % frequency != 0 ) {
             throw new IllegalArgumentException( String.format(
                     "start(%d) must divide the length of interval(%d)",
@@ -51,36 +186,16 @@ public class Aggregator {
         if ( longSize > Integer.MAX_VALUE ) {
             throw new IllegalArgumentException( "Requesting more than Integer.MAX_VALUE data points" );
         }
-        int size = (int)longSize;
-
-        final ValueAggregation[] aggregations = new ValueAggregation[size];
-        final boolean[] valueFound = new boolean[size];
-
-        for ( int ii = 0; ii < aggregations.length; ii++ ) {
-            aggregations[ii] = retentions.findFunctionForMetric( name );
-        }
-
-        Iterator<Metric> iter = metrics.iterator();
-        while ( iter.hasNext() ) {
-            Metric metric = iter.next();
-            if ( interval.contains( metric.timestamp() ) ) {
-                int index = (int)( ( metric.timestamp() - interval.start() ) / frequency );
-                valueFound[index] = true;
-                aggregations[index].consumeValue( metric.value() );
-                if ( removeMetrics ) {
-                    iter.remove();
-                }
-            }
-        }
+        return (int)longSize;
+    }
 
+    private static MetricSet toMetricSet( String name, Interval interval, long frequency, AggregationKernel kernel ) {
         MetricSet result = new MetricSet( name, interval, frequency );
-
-        for ( int i = 0; i < size; i++ ) {
-            if ( valueFound[i] ) {
-                result.setValue( i, aggregations[i].getAggregatedValue() );
+        for ( int i = 0; i < kernel.size(); i++ ) {
+            if ( kernel.hasValue( i ) ) {
+                result.setValue( i, kernel.result( i ) );
             }
         }
-
         return result;
     }
 }
@@ -0,0 +1,45 @@
+package io.bifroest.retentions;
+
+final class ArrayMetricCursor implements MetricCursor {
+    private final long[] timestamps;
+    private final double[] values;
+    private final int to;
+    private int index;
+
+    ArrayMetricCursor( long[] timestamps, double[] values, int from, int to ) {
+        if ( timestamps.length != values.length ) {
+            throw new IllegalArgumentException( String.format(
+                    "got %d timestamps but %d values",
+                    timestamps.length,
+                    values.length
+                    ) );
+        }
+        if ( from < 0 || to > timestamps.length || from > to ) {
+            throw new IndexOutOfBoundsException( String.format( "[%d, %d) is not inside [0, %d)", from, to, timestamps.length ) );
+        }
+        this.timestamps = timestamps;
+        this.values = values;
+        this.to = to;
+        this.index = from - 1;
+    }
+
+    @Override
+    public boolean next() {
+        if ( index + 1 < to ) {
+            index++;
+            return true;
+        }
+        index = to;
+        return false;
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamps[index];
+    }
+
+    @Override
+    public double value() {
+        return values[index];
+    }
+}
@@ -0,0 +1,34 @@
+package io.bifroest.retentions;
+
+import java.util.Collection;
+
+// A configuration whose lookups the classification caches can remember. Cached
+// results are keyed by the epoch of the configuration they were looked up in, and
+// by the index of the pattern that matched, so they can be carried over to the
+// next configuration if the patterns before that index stayed the same.
+public interface CacheableRetentionConfiguration extends RetentionConfiguration {
+    long epoch();
+
+    // What changed since the configuration with the given epoch, null unless this
+    // configuration directly replaced that one.
+    ConfigurationDiff changesSince( long epoch );
+
+    // Index of the first function pattern the name matches, -1 if there is none.
+    int matchFunction( String name );
+    // Index of the first access level pattern the name matches that names a known
+    // level, -1 if there is none.
+    int matchAccessLevel( String name );
+    // Both of the above, with one pass over the patterns.
+    long matchPolicy( String name );
+
+    String aggregationName( int functionMatch, String name );
+    // null if there is no access level
+    String accessLevelName( int accessLevelMatch );
+    MetricPolicy policy( long policyMatch, String name );
+
+    // Goes straight to the patterns, the caches would only churn.
+    @Override
+    default Classifications classifyAll( Collection<String> names ) {
+        return Classifications.classify( this, names, name -> policy( matchPolicy( name ), name ) );
+    }
+}
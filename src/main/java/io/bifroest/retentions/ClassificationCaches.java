@@ -0,0 +1,40 @@
+package io.bifroest.retentions;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.retentions.cache.AccessLevelMapCache;
+import io.bifroest.retentions.cache.AggregationFunctionMapCache;
+import io.bifroest.retentions.cache.CacheConfiguration;
+import io.bifroest.retentions.cache.MapCacheProvider;
+import io.bifroest.retentions.cache.MetricPolicyMapCache;
+
+// The classification caches used by all configurations.
+final class ClassificationCaches {
+    private static final Logger log = LogManager.getLogger();
+
+    static final MapCacheProvider<String> functionMapCache = new MapCacheProvider<>(
+            "ThreadLocalRetentionFunctionMapCache",
+            "SharedRetentionFunctionMapCache",
+            ( tracker, cache ) -> new AggregationFunctionMapCache( tracker, "RetentionFunctionMapCache", cache ) );
+
+    static final MapCacheProvider<String> accessLevelCache = new MapCacheProvider<>(
+            "ThreadLocalAccessLevelCache",
+            "SharedAccessLevelCache",
+            ( tracker, cache ) -> new AccessLevelMapCache( tracker, "AccessLevelMapCache", cache ) );
+
+    static final MapCacheProvider<MetricPolicy> policyCache = new MapCacheProvider<>(
+            "ThreadLocalMetricPolicyCache",
+            "SharedMetricPolicyCache",
+            ( tracker, cache ) -> new MetricPolicyMapCache( tracker, "MetricPolicyMapCache", cache ) );
+
+    private ClassificationCaches() {
+    }
+
+    static void configure( CacheConfiguration configuration ) {
+        log.debug( "Using classification caches {}", configuration );
+        functionMapCache.configure( configuration );
+        accessLevelCache.configure( configuration );
+        policyCache.configure( configuration );
+    }
+}
@@ -0,0 +1,300 @@
+package io.bifroest.retentions;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Metric name hash -> policy match (the pattern indices, see PatternClassifier),
+// kept on disk so a restart does not have to run every known name through the
+// patterns again. Pattern indices only mean something for the patterns they were
+// found with, so every index carries the fingerprint of its configuration and a
+// configuration only uses an index with its own fingerprint.
+//
+// The file is an open addressing table of 16 byte slots, name hash and match,
+// with hash 0 marking empty slots. It is mapped read only at startup. Names
+// classified later are recorded on the heap and written into a new file by
+// writeTo(), which replaces the old one atomically. At most RECORD_LIMIT names are
+// recorded between two restarts, so a flood of new names cannot grow the heap
+// side without bound.
+//
+// Names are only identified by a 64 bit hash. With millions of names the chance
+// that two of them collide is still below one in a million.
+public final class ClassificationIndex {
+    private static final Logger log = LogManager.getLogger();
+
+    static final long NOT_FOUND = Long.MIN_VALUE;
+    // 32 bytes per name at most on the heap, so 128 MB
+    static final int RECORD_LIMIT = 1 << 22;
+
+    private static final int MAGIC = 0x52434958; // RCIX
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int SLOT_BYTES = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long fingerprint;
+    // the table written by an earlier run, null if there is none
+    private final LongBuffer loaded;
+    private final int loadedMask;
+    private final int loadedCount;
+    private final int recordLimit;
+
+    // names classified since, guarded by this
+    private long[] recordedKeys;
+    private long[] recordedValues;
+    private int recordedCount;
+    private boolean limitLogged;
+
+    private ClassificationIndex( long fingerprint, LongBuffer loaded, int loadedCapacity, int loadedCount, int recordLimit ) {
+        this.fingerprint = fingerprint;
+        this.loaded = loaded;
+        this.loadedMask = loadedCapacity - 1;
+        this.loadedCount = loadedCount;
+        this.recordLimit = recordLimit;
+        this.recordedKeys = new long[16];
+        this.recordedValues = new long[16];
+    }
+
+    public static ClassificationIndex empty( long fingerprint ) {
+        return empty( fingerprint, RECORD_LIMIT );
+    }
+
+    static ClassificationIndex empty( long fingerprint, int recordLimit ) {
+        return new ClassificationIndex( fingerprint, null, 0, 0, recordLimit );
+    }
+
+    // Maps the file if it exists and was written for the given fingerprint,
+    // otherwise the index starts empty.
+    public static ClassificationIndex open( Path file, long fingerprint ) throws IOException {
+        if ( !Files.exists( file ) ) {
+            log.info( "No classification index at {}", file );
+            return empty( fingerprint );
+        }
+        try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            long size = channel.size();
+            if ( size < HEADER_BYTES ) {
+                log.warn( "Ignoring truncated classification index {}", file );
+                return empty( fingerprint );
+            }
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+            int magic = buffer.getInt( 0 );
+            int version = buffer.getInt( 4 );
+            long fileFingerprint = buffer.getLong( 8 );
+            int capacity = buffer.getInt( 16 );
+            int count = buffer.getInt( 20 );
+            if ( magic != MAGIC || version != VERSION || Integer.bitCount( capacity ) != 1
+                    || count < 0 || count >= capacity || size < HEADER_BYTES + (long)capacity * SLOT_BYTES ) {
+                log.warn( "Ignoring corrupt classification index {}", file );
+                return empty( fingerprint );
+            }
+            if ( fileFingerprint != fingerprint ) {
+                log.info( "Ignoring classification index {}, it was written for other patterns", file );
+                return empty( fingerprint );
+            }
+            buffer.position( HEADER_BYTES );
+            log.info( "Loaded classification index {} with {} names", file, count );
+            return new ClassificationIndex( fingerprint, buffer.slice().asLongBuffer(), capacity, count, RECORD_LIMIT );
+        }
+    }
+
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    public int loadedSize() {
+        return loadedCount;
+    }
+
+    public synchronized int recordedSize() {
+        return recordedCount;
+    }
+
+    // Only looks at the loaded table, the classification caches remember everything
+    // classified since.
+    long find( String name ) {
+        if ( loaded == null ) {
+            return NOT_FOUND;
+        }
+        long key = hash( name );
+        for ( int slot = slot( key, loadedMask ), probes = 0; probes <= loadedMask; slot = ( slot + 1 ) & loadedMask, probes++ ) {
+            long slotKey = loaded.get( 2 * slot );
+            if ( slotKey == key ) {
+                return loaded.get( 2 * slot + 1 );
+            } else if ( slotKey == 0 ) {
+                return NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    synchronized void record( String name, long match ) {
+        if ( isFull() ) {
+            return;
+        }
+        ensureCapacity( recordedCount + 1 );
+        insert( recordedKeys, recordedValues, hash( name ), match );
+    }
+
+    // Records names[i] -> matches[i] for all i with record[i] set. Takes the lock and
+    // grows the table once for the whole batch, names are hashed before that.
+    void recordAll( String[] names, long[] matches, boolean[] record ) {
+        long[] keys = new long[names.length];
+        int count = 0;
+        for ( int i = 0; i < names.length; i++ ) {
+            if ( record[i] ) {
+                keys[i] = hash( names[i] );
+                count++;
+            }
+        }
+        if ( count == 0 ) {
+            return;
+        }
+        synchronized ( this ) {
+            ensureCapacity( Math.min( recordedCount + count, recordLimit ) );
+            for ( int i = 0; i < names.length && !isFull(); i++ ) {
+                if ( record[i] ) {
+                    insert( recordedKeys, recordedValues, keys[i], matches[i] );
+                }
+            }
+        }
+    }
+
+    // this must be held
+    private boolean isFull() {
+        if ( recordedCount < recordLimit ) {
+            return false;
+        }
+        if ( !limitLogged ) {
+            limitLogged = true;
+            log.warn( "Classification index recorded {} names, not recording any more until the next restart", recordedCount );
+        }
+        return true;
+    }
+
+    // this must be held
+    private void ensureCapacity( int count ) {
+        if ( count <= recordedKeys.length * LOAD_FACTOR ) {
+            return;
+        }
+        int capacity = recordedKeys.length;
+        while ( count > capacity * LOAD_FACTOR ) {
+            capacity *= 2;
+        }
+        long[] keys = recordedKeys;
+        long[] values = recordedValues;
+        recordedKeys = new long[capacity];
+        recordedValues = new long[capacity];
+        recordedCount = 0;
+        for ( int i = 0; i < keys.length; i++ ) {
+            if ( keys[i] != 0 ) {
+                insert( recordedKeys, recordedValues, keys[i], values[i] );
+            }
+        }
+    }
+
+    private void insert( long[] keys, long[] values, long key, long value ) {
+        int mask = keys.length - 1;
+        int slot = slot( key, mask );
+        while ( keys[slot] != 0 && keys[slot] != key ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        if ( keys[slot] == 0 ) {
+            recordedCount++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    // Writes the loaded and the recorded names to a new file next to the given one
+    // and moves it into place, so readers of the old file are not disturbed.
+    public void writeTo( Path file ) throws IOException {
+        long[] keys;
+        long[] values;
+        int count;
+        synchronized ( this ) {
+            keys = Arrays.copyOf( recordedKeys, recordedKeys.length );
+            values = Arrays.copyOf( recordedValues, recordedValues.length );
+            count = recordedCount;
+        }
+        long capacity = Long.highestOneBit( Math.max( 16, (long)Math.ceil( ( loadedCount + count ) / LOAD_FACTOR ) ) - 1 ) << 1;
+        if ( HEADER_BYTES + capacity * SLOT_BYTES > Integer.MAX_VALUE ) {
+            throw new IOException( "too many names for a classification index: " + ( loadedCount + count ) );
+        }
+        int mask = (int)capacity - 1;
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile( directory, file.getFileName().toString(), ".tmp" );
+        try {
+            int written = 0;
+            try ( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+                MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity * SLOT_BYTES );
+                buffer.position( HEADER_BYTES );
+                LongBuffer table = buffer.slice().asLongBuffer();
+                if ( loaded != null ) {
+                    for ( int slot = 0; slot <= loadedMask; slot++ ) {
+                        long key = loaded.get( 2 * slot );
+                        if ( key != 0 ) {
+                            written += put( table, mask, key, loaded.get( 2 * slot + 1 ) );
+                        }
+                    }
+                }
+                for ( int i = 0; i < keys.length; i++ ) {
+                    if ( keys[i] != 0 ) {
+                        written += put( table, mask, keys[i], values[i] );
+                    }
+                }
+                buffer.putInt( 0, MAGIC );
+                buffer.putInt( 4, VERSION );
+                buffer.putLong( 8, fingerprint );
+                buffer.putInt( 16, (int)capacity );
+                buffer.putInt( 20, written );
+                buffer.force();
+            }
+            Files.move( temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            log.info( "Wrote classification index {} with {} names", file, written );
+        } finally {
+            Files.deleteIfExists( temporary );
+        }
+    }
+
+    private static int put( LongBuffer table, int mask, long key, long value ) {
+        int slot = slot( key, mask );
+        long slotKey;
+        while ( ( slotKey = table.get( 2 * slot ) ) != 0 && slotKey != key ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        table.put( 2 * slot, key );
+        table.put( 2 * slot + 1, value );
+        return slotKey == 0 ? 1 : 0;
+    }
+
+    private static int slot( long key, int mask ) {
+        return (int)( key ^ ( key >>> 32 ) ) & mask;
+    }
+
+    // FNV-1a over the chars with a murmur3 finalizer, never 0
+    static long hash( CharSequence s ) {
+        long h = FNV_OFFSET;
+        for ( int i = 0; i < s.length(); i++ ) {
+            h = ( h ^ s.charAt( i ) ) * FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
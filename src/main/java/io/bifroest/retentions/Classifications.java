@@ -0,0 +1,115 @@
+package io.bifroest.retentions;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Function and access level of a batch of distinct names, in columns. Names keep
+// the order they were first seen in, or the iteration order of a Set, which is
+// taken as it is without deduplicating it again. Functions are numbered in the order they
+// first show up, access levels are given by their ordinal, -1 for names without
+// one. The arrays are the storage of the result and must not be modified.
+public final class Classifications {
+    private final RetentionConfiguration retentions;
+    private final String[] names;
+    private final int[] functionIds;
+    private final List<String> functions;
+    private final int[] levelOrdinals;
+
+    private Classifications( RetentionConfiguration retentions, String[] names, int[] functionIds, List<String> functions, int[] levelOrdinals ) {
+        this.retentions = retentions;
+        this.names = names;
+        this.functionIds = functionIds;
+        this.functions = functions;
+        this.levelOrdinals = levelOrdinals;
+    }
+
+    // The lookups run in parallel, policies only need to be collected afterwards.
+    static Classifications classify( RetentionConfiguration retentions, Collection<String> names, Function<String, MetricPolicy> lookup ) {
+        String[] distinctNames = distinct( names );
+        MetricPolicy[] policies = new MetricPolicy[distinctNames.length];
+        IntStream.range( 0, distinctNames.length ).parallel().forEach( i -> policies[i] = lookup.apply( distinctNames[i] ) );
+        return of( retentions, distinctNames, policies );
+    }
+
+    static String[] distinct( Collection<String> names ) {
+        Collection<String> distinct = names instanceof Set ? names : new LinkedHashSet<>( names );
+        return distinct.toArray( new String[distinct.size()] );
+    }
+
+    // policies[i] is the policy of distinctNames[i]
+    static Classifications of( RetentionConfiguration retentions, String[] distinctNames, MetricPolicy[] policies ) {
+        int[] functionIds = new int[distinctNames.length];
+        int[] levelOrdinals = new int[distinctNames.length];
+        Map<String, Integer> ids = new HashMap<>();
+        String[] functions = new String[0];
+        for ( int i = 0; i < policies.length; i++ ) {
+            String function = policies[i].functionName();
+            Integer id = ids.get( function );
+            if ( id == null ) {
+                id = functions.length;
+                ids.put( function, id );
+                functions = Arrays.copyOf( functions, id + 1 );
+                functions[id] = function;
+            }
+            functionIds[i] = id;
+            Optional<RetentionLevel> level = policies[i].accessLevel();
+            levelOrdinals[i] = level.isPresent() ? retentions.ordinalOf( level.get() ) : -1;
+        }
+        return new Classifications( retentions, distinctNames, functionIds, Collections.unmodifiableList( Arrays.asList( functions ) ), levelOrdinals );
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name( int index ) {
+        return names[index];
+    }
+
+    public int functionId( int index ) {
+        return functionIds[index];
+    }
+
+    public String functionName( int index ) {
+        return functions.get( functionIds[index] );
+    }
+
+    public int levelOrdinal( int index ) {
+        return levelOrdinals[index];
+    }
+
+    public Optional<RetentionLevel> accessLevel( int index ) {
+        return retentions.getLevelForOrdinal( levelOrdinals[index] );
+    }
+
+    // function names by id
+    public List<String> functions() {
+        return functions;
+    }
+
+    public String[] names() {
+        return names;
+    }
+
+    public int[] functionIds() {
+        return functionIds;
+    }
+
+    public int[] levelOrdinals() {
+        return levelOrdinals;
+    }
+
+    @Override
+    public String toString() {
+        return "Classifications[" + names.length + " names, functions " + functions + "]";
+    }
+}
@@ -0,0 +1,145 @@
+package io.bifroest.retentions;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// What changed between two consecutive configurations, as far as classifying
+// names is concerned. A name keeps its function if the first function pattern it
+// matched comes before the first changed function pattern, the same goes for
+// access levels. A name that matched nothing may match an added pattern, so it
+// only keeps its result if the respective patterns did not change at all.
+public final class ConfigurationDiff {
+    static final int UNCHANGED = Integer.MAX_VALUE;
+
+    private final long fromEpoch;
+    private final long toEpoch;
+    private final int firstChangedFunction;
+    private final int firstChangedAccessLevel;
+    // added, removed or redefined levels
+    private final Set<String> changedLevels;
+
+    ConfigurationDiff( long fromEpoch, long toEpoch, int firstChangedFunction, int firstChangedAccessLevel, Set<String> changedLevels ) {
+        this.fromEpoch = fromEpoch;
+        this.toEpoch = toEpoch;
+        this.firstChangedFunction = firstChangedFunction;
+        this.firstChangedAccessLevel = firstChangedAccessLevel;
+        this.changedLevels = Collections.unmodifiableSet( changedLevels );
+    }
+
+    // Nothing carries over.
+    static ConfigurationDiff everything( long fromEpoch, long toEpoch ) {
+        return new ConfigurationDiff( fromEpoch, toEpoch, 0, 0, Collections.<String> emptySet() );
+    }
+
+    static ConfigurationDiff between( long fromEpoch, long toEpoch, PatternClassifier before, PatternClassifier after ) {
+        int firstChangedFunction = UNCHANGED;
+        int functions = Math.min( before.functionCount(), after.functionCount() );
+        for ( int i = 0; i < functions; i++ ) {
+            if ( !samePattern( before.functionPattern( i ), after.functionPattern( i ) )
+                    || !before.function( i ).equals( after.function( i ) ) ) {
+                firstChangedFunction = i;
+                break;
+            }
+        }
+        if ( firstChangedFunction == UNCHANGED && before.functionCount() != after.functionCount() ) {
+            firstChangedFunction = functions;
+        }
+
+        Set<String> changedLevels = new HashSet<>();
+        addChangedLevels( before.levels(), after.levels(), changedLevels );
+        addChangedLevels( after.levels(), before.levels(), changedLevels );
+
+        // patterns naming a level that came or went are skipped differently now
+        int firstChangedAccessLevel = UNCHANGED;
+        int accessLevels = Math.min( before.accessLevelCount(), after.accessLevelCount() );
+        for ( int i = 0; i < accessLevels; i++ ) {
+            String level = before.accessLevelName( i );
+            if ( !samePattern( before.accessLevelPattern( i ), after.accessLevelPattern( i ) )
+                    || !level.equals( after.accessLevelName( i ) )
+                    || before.levels().containsKey( level ) != after.levels().containsKey( level ) ) {
+                firstChangedAccessLevel = i;
+                break;
+            }
+        }
+        if ( firstChangedAccessLevel == UNCHANGED && before.accessLevelCount() != after.accessLevelCount() ) {
+            firstChangedAccessLevel = accessLevels;
+        }
+        return new ConfigurationDiff( fromEpoch, toEpoch, firstChangedFunction, firstChangedAccessLevel, changedLevels );
+    }
+
+    private static boolean samePattern( Pattern a, Pattern b ) {
+        return a.pattern().equals( b.pattern() ) && a.flags() == b.flags();
+    }
+
+    // RetentionLevel.equals() does not look at next(), but the level chains do
+    private static void addChangedLevels( Map<String, RetentionLevel> levels, Map<String, RetentionLevel> others, Set<String> changed ) {
+        for ( Map.Entry<String, RetentionLevel> entry : levels.entrySet() ) {
+            RetentionLevel other = others.get( entry.getKey() );
+            if ( other == null || !other.equals( entry.getValue() ) || !Objects.equals( other.next(), entry.getValue().next() ) ) {
+                changed.add( entry.getKey() );
+            }
+        }
+    }
+
+    public long fromEpoch() {
+        return fromEpoch;
+    }
+
+    public long toEpoch() {
+        return toEpoch;
+    }
+
+    public int firstChangedFunction() {
+        return firstChangedFunction;
+    }
+
+    public int firstChangedAccessLevel() {
+        return firstChangedAccessLevel;
+    }
+
+    public Set<String> changedLevels() {
+        return changedLevels;
+    }
+
+    public boolean keepsFunctionMatch( int functionMatch ) {
+        return keeps( functionMatch, firstChangedFunction );
+    }
+
+    public boolean keepsAccessLevelMatch( int accessLevelMatch ) {
+        return keeps( accessLevelMatch, firstChangedAccessLevel );
+    }
+
+    // The policy also holds the level objects of its chain, so none of them may have
+    // changed, and the chain may not have been extended by a new level.
+    public boolean keepsPolicy( MetricPolicy policy, long policyMatch ) {
+        if ( !keepsFunctionMatch( PatternClassifier.functionMatch( policyMatch ) )
+                || !keepsAccessLevelMatch( PatternClassifier.accessLevelMatch( policyMatch ) ) ) {
+            return false;
+        }
+        List<RetentionLevel> chain = policy.levelChain();
+        for ( RetentionLevel level : chain ) {
+            if ( changedLevels.contains( level.name() ) ) {
+                return false;
+            }
+        }
+        return chain.isEmpty() || chain.get( chain.size() - 1 ).next() == null
+                || !changedLevels.contains( chain.get( chain.size() - 1 ).next() );
+    }
+
+    private static boolean keeps( int match, int firstChanged ) {
+        return match < 0 ? firstChanged == UNCHANGED : match < firstChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigurationDiff [" + fromEpoch + " -> " + toEpoch
+                + ", firstChangedFunction=" + ( firstChangedFunction == UNCHANGED ? "none" : firstChangedFunction )
+                + ", firstChangedAccessLevel=" + ( firstChangedAccessLevel == UNCHANGED ? "none" : firstChangedAccessLevel )
+                + ", changedLevels=" + changedLevels + "]";
+    }
+}
@@ -0,0 +1,17 @@
+package io.bifroest.retentions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Source of the epochs of all configurations in this JVM. Every configuration,
+// and every change of a mutable one, gets a new epoch, so two different states
+// never share one.
+final class ConfigurationEpochs {
+    private static final AtomicLong last = new AtomicLong();
+
+    private ConfigurationEpochs() {
+    }
+
+    static long next() {
+        return last.incrementAndGet();
+    }
+}
@@ -0,0 +1,139 @@
+package io.bifroest.retentions;
+
+import java.util.Arrays;
+
+// A NaN filled array, or a range of one shared with other stores.
+final class DenseValueStore extends ValueStore {
+    private final double[] values;
+    private final int offset;
+    private final int length;
+    // kept up to date by set(), recounted on every count() once the array
+    // has been handed out or shared, because writes to it bypass set()
+    private int count;
+    private boolean exposed;
+
+    DenseValueStore( int length ) {
+        this.values = new double[length];
+        Arrays.fill( this.values, Double.NaN );
+        this.offset = 0;
+        this.length = length;
+        this.count = 0;
+    }
+
+    DenseValueStore( double[] values ) {
+        this.values = values;
+        this.offset = 0;
+        this.length = values.length;
+        this.count = countValues( values, 0, values.length );
+    }
+
+    private DenseValueStore( double[] values, int offset, int length ) {
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+        this.exposed = true;
+    }
+
+    // Only for stores that are not views. Hands the array out for good, so count()
+    // has to recount from then on.
+    double[] array() {
+        exposed = true;
+        return values;
+    }
+
+    @Override
+    boolean isView() {
+        return offset != 0 || length != values.length;
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    @Override
+    double get( int index ) {
+        checkIndex( index );
+        return values[offset + index];
+    }
+
+    @Override
+    ValueStore set( int index, double value ) {
+        checkIndex( index );
+        boolean wasEmpty = Double.isNaN( values[offset + index] );
+        values[offset + index] = value;
+        if ( wasEmpty != Double.isNaN( value ) ) {
+            count += wasEmpty ? 1 : -1;
+        }
+        return this;
+    }
+
+    private void checkIndex( int index ) {
+        if ( index < 0 || index >= length ) {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+    }
+
+    @Override
+    int count() {
+        if ( exposed ) {
+            count = countValues( values, offset, offset + length );
+        }
+        return count;
+    }
+
+    private static int countValues( double[] values, int from, int to ) {
+        int count = 0;
+        for ( int i = from; i < to; i++ ) {
+            if ( !Double.isNaN( values[i] ) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    int nextIndex( int from ) {
+        for ( int i = offset + from; i < offset + length; i++ ) {
+            if ( !Double.isNaN( values[i] ) ) {
+                return i - offset;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    void forEach( long start, long step, MetricVisitor visitor ) {
+        for ( int i = 0; i < length; i++ ) {
+            double value = values[offset + i];
+            if ( !Double.isNaN( value ) ) {
+                visitor.visit( start + i * step, value );
+            }
+        }
+    }
+
+    @Override
+    ValueStore slice( int from, int to ) {
+        exposed = true;
+        return new DenseValueStore( values, offset + from, to - from );
+    }
+
+    @Override
+    void copyTo( int from, int to, double[] target, int targetOffset, boolean skipEmpty ) {
+        if ( !skipEmpty ) {
+            System.arraycopy( values, offset + from, target, targetOffset, to - from );
+            return;
+        }
+        for ( int i = offset + from, j = targetOffset; i < offset + to; i++, j++ ) {
+            double value = values[i];
+            if ( !Double.isNaN( value ) ) {
+                target[j] = value;
+            }
+        }
+    }
+
+    @Override
+    DenseValueStore toDense() {
+        return isView() ? new DenseValueStore( toArray() ) : this;
+    }
+}
@@ -0,0 +1,230 @@
+package io.bifroest.retentions;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Values in a direct or memory mapped ByteBuffer, outside of the garbage collected
+// heap. The store starts with one reference, once the last reference is released
+// any access throws an IllegalStateException and buffers the store allocated
+// itself are freed.
+final class DirectValueStore extends ValueStore {
+    private static final Logger log = LogManager.getLogger();
+
+    // sun.misc.Unsafe.invokeCleaner() on Java 9 and later, null on Java 8
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final AtomicBoolean cleanFailureLogged = new AtomicBoolean();
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+            invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+            Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+            theUnsafe.setAccessible( true );
+            unsafe = theUnsafe.get( null );
+        } catch ( ReflectiveOperationException | RuntimeException e ) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final int length;
+    private final AtomicInteger references;
+    private final boolean owned;
+    // volatile, so a thread reading after another one released sees null instead of freed memory
+    private volatile ByteBuffer buffer;
+    private volatile DoubleBuffer values;
+    private int count;
+
+    // Uses the content of the buffer as it is, from its position on. Buffers that are
+    // owned are freed on release, so nobody else may hold on to them.
+    DirectValueStore( ByteBuffer buffer, int length, boolean owned ) {
+        if ( buffer.remaining() < (long)length * Double.BYTES ) {
+            throw new IllegalArgumentException( String.format(
+                    "buffer holds %d bytes, %d values need %d",
+                    buffer.remaining(),
+                    length,
+                    (long)length * Double.BYTES
+                    ) );
+        }
+        this.length = length;
+        this.references = new AtomicInteger( 1 );
+        this.owned = owned;
+        this.buffer = buffer;
+        this.values = buffer.slice().asDoubleBuffer();
+        for ( int i = 0; i < length; i++ ) {
+            if ( !Double.isNaN( values.get( i ) ) ) {
+                count++;
+            }
+        }
+    }
+
+    static DirectValueStore allocate( int length ) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( length * Double.BYTES );
+        fillWithNaN( buffer, length );
+        return new DirectValueStore( buffer, length, true );
+    }
+
+    static void fillWithNaN( ByteBuffer buffer, int length ) {
+        DoubleBuffer fill = buffer.slice().asDoubleBuffer();
+        for ( int i = 0; i < length; i++ ) {
+            fill.put( i, Double.NaN );
+        }
+    }
+
+    private DoubleBuffer values() {
+        DoubleBuffer result = values;
+        if ( result == null ) {
+            throw new IllegalStateException( "MetricSet has been released" );
+        }
+        return result;
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    @Override
+    double get( int index ) {
+        if ( index < 0 || index >= length ) {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        return values().get( index );
+    }
+
+    @Override
+    ValueStore set( int index, double value ) {
+        if ( index < 0 || index >= length ) {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        DoubleBuffer current = values();
+        boolean wasEmpty = Double.isNaN( current.get( index ) );
+        current.put( index, value );
+        if ( wasEmpty != Double.isNaN( value ) ) {
+            count += wasEmpty ? 1 : -1;
+        }
+        return this;
+    }
+
+    @Override
+    int count() {
+        values();
+        return count;
+    }
+
+    @Override
+    int nextIndex( int from ) {
+        DoubleBuffer current = values();
+        for ( int i = from; i < length; i++ ) {
+            if ( !Double.isNaN( current.get( i ) ) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    void forEach( long start, long step, MetricVisitor visitor ) {
+        DoubleBuffer current = values();
+        for ( int i = 0; i < length; i++ ) {
+            double value = current.get( i );
+            if ( !Double.isNaN( value ) ) {
+                visitor.visit( start + i * step, value );
+            }
+        }
+    }
+
+    @Override
+    void copyTo( int from, int to, double[] target, int targetOffset, boolean skipEmpty ) {
+        if ( skipEmpty ) {
+            super.copyTo( from, to, target, targetOffset, skipEmpty );
+            return;
+        }
+        DoubleBuffer source = values().duplicate();
+        source.position( from );
+        source.get( target, targetOffset, to - from );
+    }
+
+    @Override
+    DenseValueStore toDense() {
+        return new DenseValueStore( toArray() );
+    }
+
+    @Override
+    boolean isOffHeap() {
+        return true;
+    }
+
+    @Override
+    void retain() {
+        int current;
+        do {
+            current = references.get();
+            if ( current <= 0 ) {
+                throw new IllegalStateException( "MetricSet has been released" );
+            }
+        } while ( !references.compareAndSet( current, current + 1 ) );
+    }
+
+    @Override
+    boolean release() {
+        int remaining = references.decrementAndGet();
+        if ( remaining < 0 ) {
+            throw new IllegalStateException( "MetricSet has been released" );
+        }
+        if ( remaining > 0 ) {
+            return false;
+        }
+        ByteBuffer released = buffer;
+        buffer = null;
+        values = null;
+        if ( released instanceof MappedByteBuffer ) {
+            ( (MappedByteBuffer)released ).force();
+        }
+        if ( owned ) {
+            clean( released );
+        }
+        return true;
+    }
+
+    // Direct buffers are otherwise only freed once the garbage collector finds them.
+    // The cleaner is internal API, so this is best effort: Unsafe.invokeCleaner() from
+    // Java 9 on, the buffer's own cleaner on Java 8.
+    private static void clean( ByteBuffer buffer ) {
+        if ( !buffer.isDirect() ) {
+            return;
+        }
+        try {
+            if ( INVOKE_CLEANER != null ) {
+                INVOKE_CLEANER.invoke( UNSAFE, buffer );
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+            cleanerMethod.setAccessible( true );
+            Object cleaner = cleanerMethod.invoke( buffer );
+            if ( cleaner != null ) {
+                Method clean = cleaner.getClass().getMethod( "clean" );
+                clean.setAccessible( true );
+                clean.invoke( cleaner );
+            }
+        } catch ( ReflectiveOperationException | RuntimeException e ) {
+            if ( cleanFailureLogged.compareAndSet( false, true ) ) {
+                log.warn( "Cannot free direct buffers eagerly, released MetricSets keep their memory until garbage collection", e );
+            } else {
+                log.debug( "Cannot free direct buffer eagerly", e );
+            }
+        }
+    }
+}
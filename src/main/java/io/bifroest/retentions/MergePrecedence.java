@@ -0,0 +1,8 @@
+package io.bifroest.retentions;
+
+// Decides which of several merged MetricSets keeps its value for a slot, in the
+// order the sets are given.
+public enum MergePrecedence {
+    FIRST_WINS,
+    LAST_WINS
+}
@@ -0,0 +1,18 @@
+package io.bifroest.retentions;
+
+// Primitive, allocation free alternative to Iterator<Metric>. A cursor starts
+// before the first point; timestamp() and value() are only valid after
+// next() returned true.
+public interface MetricCursor {
+    boolean next();
+    long timestamp();
+    double value();
+
+    static MetricCursor over( long[] timestamps, double[] values ) {
+        return over( timestamps, values, 0, timestamps.length );
+    }
+
+    static MetricCursor over( long[] timestamps, double[] values, int from, int to ) {
+        return new ArrayMetricCursor( timestamps, values, from, to );
+    }
+}
@@ -0,0 +1,113 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+import io.bifroest.commons.statistics.aggregation.ValueAggregationFactory;
+
+// Everything a RetentionConfiguration knows about a single metric name,
+// resolved in one go.
+public final class MetricPolicy {
+    private final String functionName;
+    private final ValueAggregationFactory aggregationFactory;
+    private final RetentionLevel accessLevel;
+    private final List<RetentionLevel> levelChain;
+
+    public MetricPolicy( String functionName, ValueAggregationFactory aggregationFactory, RetentionLevel accessLevel, List<RetentionLevel> levelChain ) {
+        this.functionName = Objects.requireNonNull( functionName );
+        this.aggregationFactory = Objects.requireNonNull( aggregationFactory );
+        this.accessLevel = accessLevel;
+        this.levelChain = Collections.unmodifiableList( new ArrayList<>( levelChain ) );
+        if ( accessLevel != null && ( this.levelChain.isEmpty() || !this.levelChain.get( 0 ).equals( accessLevel ) ) ) {
+            throw new IllegalArgumentException( "level chain " + levelChain + " must start with access level " + accessLevel );
+        }
+    }
+
+    // Puts a policy together from the single lookups, for configurations that
+    // cannot resolve everything in one go.
+    static MetricPolicy lookUp( RetentionConfiguration retentions, String name ) {
+        ValueAggregation aggregation = retentions.findFunctionForMetric( name );
+        String registeredName = PatternClassifier.aggregationName( aggregation.getClass() );
+        String functionName = registeredName != null ? registeredName : aggregation.getClass().getSimpleName();
+        ValueAggregationFactory factory = registeredName != null ? PatternClassifier.aggregationFactory( registeredName ) : new ValueAggregationFactory() {
+            @Override
+            public String getFunctionName() {
+                return functionName;
+            }
+
+            @Override
+            public ValueAggregation createAggregation() {
+                return retentions.findFunctionForMetric( name );
+            }
+        };
+
+        RetentionLevel accessLevel = retentions.findAccessLevelForMetric( name ).orElse( null );
+        List<RetentionLevel> chain = new ArrayList<>();
+        Optional<RetentionLevel> level = Optional.ofNullable( accessLevel );
+        while ( level.isPresent() && !chain.contains( level.get() ) ) {
+            chain.add( level.get() );
+            level = retentions.getNextLevel( level.get() );
+        }
+        return new MetricPolicy( functionName, factory, accessLevel, chain );
+    }
+
+    public String functionName() {
+        return functionName;
+    }
+
+    public ValueAggregationFactory aggregationFactory() {
+        return aggregationFactory;
+    }
+
+    public ValueAggregation createAggregation() {
+        return aggregationFactory.createAggregation();
+    }
+
+    public Optional<RetentionLevel> accessLevel() {
+        return Optional.ofNullable( accessLevel );
+    }
+
+    // The access level followed by all levels reachable through next(),
+    // empty if no access level is configured for the metric.
+    public List<RetentionLevel> levelChain() {
+        return levelChain;
+    }
+
+    public Optional<RetentionTable> accessTable( long timestamp ) {
+        if ( accessLevel == null ) {
+            return Optional.empty();
+        }
+        return Optional.of( new RetentionTable( accessLevel, accessLevel.indexOf( timestamp ) ) );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash( functionName, accessLevel, levelChain );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if ( this == obj ) {
+            return true;
+        } else if ( !( obj instanceof MetricPolicy ) ) {
+            return false;
+        }
+        MetricPolicy policy = (MetricPolicy)obj;
+        return functionName.equals( policy.functionName )
+                && Objects.equals( accessLevel, policy.accessLevel )
+                && levelChain.equals( policy.levelChain );
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder( "MetricPolicy[" );
+        result.append( "function=" ).append( functionName );
+        result.append( ";levels=" ).append( levelChain );
+        result.append( ']' );
+        return result.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.commons.model.Metric;
+import io.bifroest.retentions.util.LongObjectHashMap;
+
+// Splits a batch of metrics into one TableBatch per access table. Each distinct
+// name is classified once per batch, points are grouped by packed table key and
+// tables come from a pool kept across batches.
+public final class MetricRouter {
+    private static final Logger log = LogManager.getLogger();
+    private static final int INITIAL_BATCH_CAPACITY = 16;
+
+    private final RetentionConfiguration retentions;
+    private final RetentionTablePool tables;
+
+    public MetricRouter( RetentionConfiguration retentions ) {
+        this( retentions, new RetentionTablePool( retentions ) );
+    }
+
+    public MetricRouter( RetentionConfiguration retentions, RetentionTablePool tables ) {
+        this.retentions = retentions;
+        this.tables = tables;
+    }
+
+    public Result route( Iterable<Metric> metrics ) {
+        Map<String, Route> routes = new HashMap<>();
+        LongObjectHashMap<TableBatch> batches = new LongObjectHashMap<>();
+        List<Metric> unrouted = new ArrayList<>();
+        for ( Metric metric : metrics ) {
+            Route route = routes.get( metric.name() );
+            if ( route == null ) {
+                route = routeFor( metric.name() );
+                routes.put( metric.name(), route );
+            }
+            if ( route == Route.NONE ) {
+                unrouted.add( metric );
+                continue;
+            }
+            long key = RetentionTableKey.encode( route.ordinal, route.level, metric.timestamp() );
+            TableBatch batch = batches.get( key );
+            if ( batch == null ) {
+                batch = new TableBatch( tables.get( route.level, RetentionTableKey.block( key ) ), INITIAL_BATCH_CAPACITY );
+                batches.put( key, batch );
+            }
+            batch.add( metric.name(), metric.timestamp(), metric.value() );
+        }
+        if ( !unrouted.isEmpty() ) {
+            // findPolicyForMetric already counted them, UnclassifiedNames summarizes the misses
+            log.debug( "No AccessTable found for {} of the metrics", unrouted.size() );
+        }
+        return new Result( batches, unrouted );
+    }
+
+    private Route routeFor( String name ) {
+        RetentionLevel level = retentions.findPolicyForMetric( name ).accessLevel().orElse( null );
+        if ( level == null ) {
+            return Route.NONE;
+        }
+        return new Route( level, retentions.ordinalOf( level ) );
+    }
+
+    private static final class Route {
+        static final Route NONE = new Route( null, -1 );
+
+        final RetentionLevel level;
+        final int ordinal;
+
+        Route( RetentionLevel level, int ordinal ) {
+            this.level = level;
+            this.ordinal = ordinal;
+        }
+    }
+
+    public static final class Result {
+        private final List<TableBatch> batches;
+        private final List<Metric> unrouted;
+
+        Result( LongObjectHashMap<TableBatch> batches, List<Metric> unrouted ) {
+            // ordered by level ordinal, then block
+            long[] keys = batches.keys();
+            Arrays.sort( keys );
+            List<TableBatch> sorted = new ArrayList<>( keys.length );
+            for ( long key : keys ) {
+                sorted.add( batches.get( key ) );
+            }
+            this.batches = Collections.unmodifiableList( sorted );
+            this.unrouted = Collections.unmodifiableList( unrouted );
+        }
+
+        public List<TableBatch> batches() {
+            return batches;
+        }
+
+        // metrics without an access level
+        public List<Metric> unrouted() {
+            return unrouted;
+        }
+    }
+}
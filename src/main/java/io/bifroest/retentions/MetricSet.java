@@ -1,11 +1,16 @@
 package io.bifroest.retentions;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
-import org.apache.commons.collections4.iterators.FilterIterator;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -17,9 +22,60 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
     private final String name;
     private final long startTimestamp;
     private final long step;
-    private final double[] values;
+    private ValueStore store;
 
     public MetricSet( String name, Interval interval, long step ) {
+        this( name, interval.start(), step, new DenseValueStore( checkedLength( interval, step ) ) );
+    }
+
+    // Picks a sparse representation if less than a quarter of the slots are expected to
+    // be filled. A sparse set switches to the dense representation on its own once it
+    // fills up.
+    public static MetricSet create( String name, Interval interval, long step, double expectedFillRatio ) {
+        if ( expectedFillRatio * SparseValueStore.DENSE_FILL_DIVISOR < 1 ) {
+            return sparse( name, interval, step, expectedFillRatio );
+        }
+        return new MetricSet( name, interval, step );
+    }
+
+    public static MetricSet sparse( String name, Interval interval, long step ) {
+        return sparse( name, interval, step, 0 );
+    }
+
+    private static MetricSet sparse( String name, Interval interval, long step, double expectedFillRatio ) {
+        int length = checkedLength( interval, step );
+        return new MetricSet( name, interval.start(), step, new SparseValueStore( length, (int)( length * expectedFillRatio ) ) );
+    }
+
+    // Values live in direct memory outside of the garbage collected heap. Call release()
+    // once the set is not needed anymore.
+    public static MetricSet offHeap( String name, Interval interval, long step ) {
+        return new MetricSet( name, interval.start(), step, DirectValueStore.allocate( checkedLength( interval, step ) ) );
+    }
+
+    // Values are read from and written to the buffer, starting at its position. The
+    // content is used as it is, empty slots have to hold NaN.
+    public static MetricSet wrap( String name, Interval interval, long step, ByteBuffer buffer ) {
+        return new MetricSet( name, interval.start(), step, new DirectValueStore( buffer, checkedLength( interval, step ), false ) );
+    }
+
+    // Maps the values to a region of a file. Values already in the region are kept, the
+    // part of the region beyond the end of the file starts out empty. release() writes
+    // the values back and unmaps the region.
+    public static MetricSet map( String name, Interval interval, long step, FileChannel channel, long position ) throws IOException {
+        int length = checkedLength( interval, step );
+        long size = channel.size();
+        MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_WRITE, position, (long)length * Double.BYTES );
+        if ( size < position + (long)length * Double.BYTES ) {
+            int existing = (int)Math.max( 0, ( size - position ) / Double.BYTES );
+            buffer.position( existing * Double.BYTES );
+            DirectValueStore.fillWithNaN( buffer, length - existing );
+            buffer.position( 0 );
+        }
+        return new MetricSet( name, interval.start(), step, new DirectValueStore( buffer, length, true ) );
+    }
+
+    private static int checkedLength( Interval interval, long step ) {
         if ( interval.start() % step != 0 ) {
             throw new IllegalArgumentException( String.format(
                     "start (%d) must divide the length of interval(%d)",
@@ -42,24 +98,42 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
                     ) );
         }
 
-        this.name = name;
-        this.startTimestamp = interval.start();
-        this.step = step;
-        this.values = new double[(int)( ( interval.end() - interval.start() ) / step )];
-        for ( int i = 0; i < this.values.length; i++ ) {
-            this.values[i] = Double.NaN;
-        }
+        return (int)( ( interval.end() - interval.start() ) / step );
     }
 
-    private MetricSet( String name, long startTimestamp, long step, double[] values ) {
+    private MetricSet( String name, long startTimestamp, long step, ValueStore store ) {
         this.name = name;
         this.startTimestamp = startTimestamp;
         this.step = step;
-        this.values = values;
+        this.store = store;
     }
 
     public void setValue( int index, double value ) {
-        this.values[index] = value;
+        this.store = this.store.set( index, value );
+    }
+
+    public double getValue( int index ) {
+        return store.get( index );
+    }
+
+    public boolean isSparse() {
+        return store.isSparse();
+    }
+
+    public boolean isOffHeap() {
+        return store.isOffHeap();
+    }
+
+    // Off heap sets count references, starting with one. retain() adds one for another
+    // user of the set, release() gives one up and frees the memory with the last one,
+    // after that the set cannot be used anymore. Both do nothing for heap sets.
+    public MetricSet retain() {
+        store.retain();
+        return this;
+    }
+
+    public boolean release() {
+        return store.release();
     }
 
     @Override
@@ -72,18 +146,128 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
                     ) );
         }
         int index = (int)( ( e.timestamp() - this.startTimestamp ) / this.step );
-        if ( index < 0 || this.values.length <= index ) {
+        if ( index < 0 || this.store.length() <= index ) {
             throw new IllegalArgumentException( String.format(
                     "timestamp(%d) outside declared interval",
                     e.timestamp()
                     ) );
         }
-        this.values[index] = e.value();
+        this.store = this.store.set( index, e.value() );
         return true;
     }
 
+    // The returned array is the storage of this set, writes to it are visible in the set.
+    // A sparse set switches to the dense representation for this. Off heap sets and
+    // slices have no such array and return a copy.
     public double[] values() {
-        return values;
+        if ( store.isOffHeap() || store.isView() ) {
+            return store.toArray();
+        }
+        DenseValueStore dense = store.toDense();
+        this.store = dense;
+        return dense.array();
+    }
+
+    // A view of part of this set. Slices of dense sets share the values with this set,
+    // writes to either are visible in both. Slices of sparse and off heap sets are
+    // copies on the heap.
+    public MetricSet slice( Interval interval ) {
+        int from = indexOf( interval.start() );
+        int to = indexOf( interval.end() );
+        if ( from < 0 || to > store.length() || from > to ) {
+            throw new IllegalArgumentException( String.format(
+                    "interval(%s) outside declared interval",
+                    interval
+                    ) );
+        }
+        return new MetricSet( name, interval.start(), step, store.slice( from, to ) );
+    }
+
+    private int indexOf( long timestamp ) {
+        if ( timestamp % step != 0 ) {
+            throw new IllegalArgumentException( String.format(
+                    "step(%d) must divide timestamp(%d)",
+                    step,
+                    timestamp
+                    ) );
+        }
+        long index = ( timestamp - startTimestamp ) / step;
+        return (int)Math.max( -1, Math.min( index, (long)store.length() + 1 ) );
+    }
+
+    // Merges sets with the same step into one set covering all of them.
+    public static MetricSet merge( MergePrecedence precedence, List<MetricSet> sets ) {
+        if ( sets.isEmpty() ) {
+            throw new IllegalArgumentException( "nothing to merge" );
+        }
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for ( MetricSet set : sets ) {
+            start = Math.min( start, set.startTimestamp );
+            end = Math.max( end, set.interval().end() );
+        }
+        return merge( new Interval( start, end ), precedence, sets );
+    }
+
+    // Merges sets with the same step into a new dense set over interval, values outside
+    // of interval are dropped. Where several sets have a value for a slot, precedence
+    // decides which one is kept; empty slots never overwrite values.
+    public static MetricSet merge( Interval interval, MergePrecedence precedence, List<MetricSet> sets ) {
+        if ( sets.isEmpty() ) {
+            throw new IllegalArgumentException( "nothing to merge" );
+        }
+        MetricSet first = sets.get( 0 );
+        for ( MetricSet set : sets ) {
+            if ( set.step != first.step ) {
+                throw new IllegalArgumentException( String.format(
+                        "cannot merge step(%d) with step(%d)",
+                        set.step,
+                        first.step
+                        ) );
+            }
+        }
+        double[] target = new double[checkedLength( interval, first.step )];
+        Arrays.fill( target, Double.NaN );
+        // The winning set is written last. Sets that do not overlap anything written
+        // so far are copied as a block, NaN included.
+        long writtenStart = Long.MAX_VALUE;
+        long writtenEnd = Long.MIN_VALUE;
+        for ( int n = 0; n < sets.size(); n++ ) {
+            MetricSet set = sets.get( precedence == MergePrecedence.LAST_WINS ? n : sets.size() - 1 - n );
+            long from = Math.max( set.startTimestamp, interval.start() );
+            long to = Math.min( set.interval().end(), interval.end() );
+            if ( from >= to ) {
+                continue;
+            }
+            boolean overlaps = from < writtenEnd && writtenStart < to;
+            set.store.copyTo(
+                    (int)( ( from - set.startTimestamp ) / set.step ),
+                    (int)( ( to - set.startTimestamp ) / set.step ),
+                    target,
+                    (int)( ( from - interval.start() ) / set.step ),
+                    overlaps );
+            writtenStart = Math.min( writtenStart, from );
+            writtenEnd = Math.max( writtenEnd, to );
+        }
+        // counts the values once, the store keeps track of them from then on
+        return new MetricSet( first.name, interval.start(), first.step, new DenseValueStore( target ) );
+    }
+
+    // Visits all points in timestamp order without allocating a Metric per point.
+    public void forEach( MetricVisitor visitor ) {
+        store.forEach( startTimestamp, step, visitor );
+    }
+
+    public MetricSetCursor cursor() {
+        return new MetricSetCursor().reset( this );
+    }
+
+    ValueStore store() {
+        return store;
+    }
+
+    public String name() {
+        return this.name;
     }
 
     public long step() {
@@ -91,34 +275,35 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
     }
 
     public Interval interval() {
-        return new Interval( startTimestamp, startTimestamp + ( step * values.length ) );
+        return new Interval( startTimestamp, startTimestamp + ( step * store.length() ) );
     }
 
     @Override
     public Iterator<Metric> iterator() {
-        return new FilterIterator<>(
-                new Iterator<Metric>() {
-                    private int nextIndex;
+        return new Iterator<Metric>() {
+            private int nextIndex = store.nextIndex( 0 );
 
-                    @Override
-                    public boolean hasNext() {
-                        return nextIndex < values.length;
-                    }
+            @Override
+            public boolean hasNext() {
+                return nextIndex >= 0;
+            }
 
-                    @Override
-                    public Metric next() {
-                        Metric ret = new Metric( name, startTimestamp + nextIndex * step, values[nextIndex] );
-                        nextIndex++;
-                        return ret;
-                    }
-                }, metric -> !Double.isNaN( metric.value() ) );
+            @Override
+            public Metric next() {
+                if ( nextIndex < 0 ) {
+                    throw new NoSuchElementException();
+                }
+                Metric ret = new Metric( name, startTimestamp + nextIndex * step, store.get( nextIndex ) );
+                nextIndex = nextIndex + 1 < store.length() ? store.nextIndex( nextIndex + 1 ) : -1;
+                return ret;
+            }
+        };
     }
 
+    // constant time, the stores keep track of their number of values
     @Override
     public int size() {
-        // The cast to int is safe, because values is an array, which
-        // cannot be larger than Integer.MAX_VALUE
-        return (int)Arrays.stream( values ).filter( value -> !Double.isNaN( value ) ).count();
+        return store.count();
     }
 
     @Override
@@ -127,7 +312,7 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
         hash = 23 * hash + Objects.hashCode(this.name);
         hash = 23 * hash + (int) (this.startTimestamp ^ (this.startTimestamp >>> 32));
         hash = 23 * hash + (int) (this.step ^ (this.step >>> 32));
-        hash = 23 * hash + Arrays.hashCode(this.values);
+        hash = 23 * hash + this.store.valuesHashCode();
         return hash;
     }
 
@@ -149,7 +334,7 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
         if (this.step != other.step) {
             return false;
         }
-        if (!Arrays.equals(this.values, other.values)) {
+        if (!this.store.valuesEqual(other.store)) {
             return false;
         }
         return true;
@@ -162,11 +347,12 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
         result.put( "startTimestamp", startTimestamp );
         result.put( "step", step );
         JSONArray jsonValues = new JSONArray();
-        for (int i = 0; i < values.length; i++) {
-            if ( Double.isNaN( values[i] ) ) {
+        for (int i = 0; i < store.length(); i++) {
+            double value = store.get( i );
+            if ( Double.isNaN( value ) ) {
                 jsonValues.put( JSONObject.NULL );
             } else {
-                jsonValues.put(i, values[i]);
+                jsonValues.put(i, value);
             }
         }
         result.put( "values", jsonValues );
@@ -185,8 +371,8 @@ public class MetricSet extends AbstractSet<Metric> implements JSONSerializable {
         }
         return new MetricSet(
                 json.getString( "name" ),
-                json.getInt( "startTimestamp"),
-                json.getInt( "step" ),
-                values );
+                json.getLong( "startTimestamp" ),
+                json.getLong( "step" ),
+                new DenseValueStore( values ) );
     }
 }
@@ -0,0 +1,292 @@
+package io.bifroest.retentions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.bifroest.commons.model.Interval;
+
+// Binary form of a MetricSet, in the spirit of the Gorilla paper. Timestamps are
+// implicit, so only the slot indices of filled slots are written, as delta of
+// delta. A run of empty slots is just a larger delta, a completely filled set
+// costs one bit per slot. Values are XORed with their predecessor and only the
+// meaningful bits are written.
+//
+// Layout: version byte, name (int length + UTF-8), start, step, slot count,
+// value count, bit stream length in bytes, bit stream.
+public final class MetricSetCodec {
+    private static final byte VERSION = 1;
+
+    private MetricSetCodec() {
+    }
+
+    public static byte[] encode( MetricSet set ) {
+        ByteBuffer buffer = ByteBuffer.allocate( encodedSizeBound( set ) );
+        encode( set, buffer );
+        return Arrays.copyOf( buffer.array(), buffer.position() );
+    }
+
+    // Writes at the position of the buffer and advances it.
+    public static void encode( MetricSet set, ByteBuffer buffer ) {
+        byte[] name = set.name().getBytes( StandardCharsets.UTF_8 );
+        BitWriter bits = new BitWriter( Math.max( 16, set.size() * 2 ) );
+        PointEncoder encoder = new PointEncoder( bits, set.interval().start(), set.step() );
+        set.forEach( encoder );
+        byte[] stream = bits.toByteArray();
+
+        buffer.put( VERSION );
+        buffer.putInt( name.length );
+        buffer.put( name );
+        buffer.putLong( set.interval().start() );
+        buffer.putLong( set.step() );
+        buffer.putInt( slotCount( set ) );
+        buffer.putInt( set.size() );
+        buffer.putInt( stream.length );
+        buffer.put( stream );
+    }
+
+    // Reads from the position of the buffer and advances it past the set.
+    public static MetricSet decode( ByteBuffer buffer ) {
+        try {
+            byte version = buffer.get();
+            if ( version != VERSION ) {
+                throw new IllegalArgumentException( "unknown MetricSet encoding version " + version );
+            }
+            byte[] name = new byte[checkedLength( buffer.getInt(), buffer.remaining() )];
+            buffer.get( name );
+            long start = buffer.getLong();
+            long step = buffer.getLong();
+            int slots = buffer.getInt();
+            int count = buffer.getInt();
+            if ( step <= 0 || slots < 0 || count < 0 || count > slots ) {
+                throw new IllegalArgumentException( "corrupt MetricSet header" );
+            }
+            byte[] stream = new byte[checkedLength( buffer.getInt(), buffer.remaining() )];
+            buffer.get( stream );
+
+            MetricSet result = MetricSet.create(
+                    new String( name, StandardCharsets.UTF_8 ),
+                    new Interval( start, start + slots * step ),
+                    step,
+                    slots == 0 ? 0 : (double)count / slots );
+            BitReader bits = new BitReader( stream );
+            long index = -1;
+            long delta = 1;
+            long valueBits = 0;
+            int leading = Integer.MAX_VALUE;
+            int trailing = 0;
+            for ( int i = 0; i < count; i++ ) {
+                delta += readDeltaOfDelta( bits );
+                index += delta;
+                if ( delta <= 0 || index >= slots ) {
+                    throw new IllegalArgumentException( "corrupt MetricSet slot index " + index );
+                }
+                if ( i == 0 ) {
+                    valueBits = bits.read( 64 );
+                } else if ( bits.read( 1 ) == 1 ) {
+                    if ( bits.read( 1 ) == 1 ) {
+                        leading = (int)bits.read( 5 );
+                        int meaningful = (int)bits.read( 6 ) + 1;
+                        trailing = 64 - leading - meaningful;
+                        if ( trailing < 0 ) {
+                            throw new IllegalArgumentException( "corrupt MetricSet value" );
+                        }
+                    } else if ( leading == Integer.MAX_VALUE ) {
+                        throw new IllegalArgumentException( "corrupt MetricSet value" );
+                    }
+                    valueBits ^= bits.read( 64 - leading - trailing ) << trailing;
+                }
+                result.setValue( (int)index, Double.longBitsToDouble( valueBits ) );
+            }
+            return result;
+        } catch ( BufferUnderflowException e ) {
+            throw new IllegalArgumentException( "truncated MetricSet", e );
+        }
+    }
+
+    public static void write( MetricSet set, OutputStream out ) throws IOException {
+        byte[] encoded = encode( set );
+        DataOutputStream data = new DataOutputStream( out );
+        data.writeInt( encoded.length );
+        data.write( encoded );
+        data.flush();
+    }
+
+    public static MetricSet read( InputStream in ) throws IOException {
+        DataInputStream data = new DataInputStream( in );
+        int length = data.readInt();
+        if ( length < 0 ) {
+            throw new IOException( "negative MetricSet length " + length );
+        }
+        byte[] encoded = new byte[length];
+        data.readFully( encoded );
+        try {
+            return decode( ByteBuffer.wrap( encoded ) );
+        } catch ( IllegalArgumentException e ) {
+            throw new IOException( e.getMessage(), e );
+        }
+    }
+
+    static int encodedSizeBound( MetricSet set ) {
+        // header + worst case of 4 + 32 bits per index and 2 + 5 + 6 + 64 bits per value
+        return 1 + 4 + set.name().length() * 3 + 8 + 8 + 4 + 4 + 4 + set.size() * 15 + 16;
+    }
+
+    private static int slotCount( MetricSet set ) {
+        return (int)( ( set.interval().end() - set.interval().start() ) / set.step() );
+    }
+
+    private static int checkedLength( int length, int remaining ) {
+        if ( length < 0 || length > remaining ) {
+            throw new IllegalArgumentException( "corrupt MetricSet length " + length );
+        }
+        return length;
+    }
+
+    // '0' for 0, then '10', '110' and '1110' for 7, 9 and 12 bit values and '1111'
+    // for everything else
+    private static void writeDeltaOfDelta( BitWriter bits, long deltaOfDelta ) {
+        if ( deltaOfDelta == 0 ) {
+            bits.write( 0, 1 );
+        } else if ( deltaOfDelta >= -64 && deltaOfDelta <= 63 ) {
+            bits.write( 0b10, 2 );
+            bits.write( deltaOfDelta, 7 );
+        } else if ( deltaOfDelta >= -256 && deltaOfDelta <= 255 ) {
+            bits.write( 0b110, 3 );
+            bits.write( deltaOfDelta, 9 );
+        } else if ( deltaOfDelta >= -2048 && deltaOfDelta <= 2047 ) {
+            bits.write( 0b1110, 4 );
+            bits.write( deltaOfDelta, 12 );
+        } else {
+            bits.write( 0b1111, 4 );
+            bits.write( deltaOfDelta, 32 );
+        }
+    }
+
+    private static long readDeltaOfDelta( BitReader bits ) {
+        if ( bits.read( 1 ) == 0 ) {
+            return 0;
+        } else if ( bits.read( 1 ) == 0 ) {
+            return signed( bits.read( 7 ), 7 );
+        } else if ( bits.read( 1 ) == 0 ) {
+            return signed( bits.read( 9 ), 9 );
+        } else if ( bits.read( 1 ) == 0 ) {
+            return signed( bits.read( 12 ), 12 );
+        }
+        return signed( bits.read( 32 ), 32 );
+    }
+
+    private static long signed( long value, int width ) {
+        return ( value << ( 64 - width ) ) >> ( 64 - width );
+    }
+
+    private static final class PointEncoder implements MetricVisitor {
+        private final BitWriter bits;
+        private final long start;
+        private final long step;
+        private long index = -1;
+        private long delta = 1;
+        private boolean first = true;
+        private long valueBits;
+        private int leading = Integer.MAX_VALUE;
+        private int trailing;
+
+        PointEncoder( BitWriter bits, long start, long step ) {
+            this.bits = bits;
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        public void visit( long timestamp, double value ) {
+            long nextIndex = ( timestamp - start ) / step;
+            long nextDelta = nextIndex - index;
+            long deltaOfDelta = nextDelta - delta;
+            writeDeltaOfDelta( bits, deltaOfDelta );
+            index = nextIndex;
+            delta = nextDelta;
+
+            long nextBits = Double.doubleToRawLongBits( value );
+            if ( first ) {
+                bits.write( nextBits, 64 );
+                first = false;
+            } else {
+                long xor = nextBits ^ valueBits;
+                if ( xor == 0 ) {
+                    bits.write( 0, 1 );
+                } else {
+                    int nextLeading = Math.min( Long.numberOfLeadingZeros( xor ), 31 );
+                    int nextTrailing = Long.numberOfTrailingZeros( xor );
+                    if ( leading != Integer.MAX_VALUE && nextLeading >= leading && nextTrailing >= trailing ) {
+                        bits.write( 0b10, 2 );
+                        bits.write( xor >>> trailing, 64 - leading - trailing );
+                    } else {
+                        leading = nextLeading;
+                        trailing = nextTrailing;
+                        int meaningful = 64 - leading - trailing;
+                        bits.write( 0b11, 2 );
+                        bits.write( leading, 5 );
+                        bits.write( meaningful - 1, 6 );
+                        bits.write( xor >>> trailing, meaningful );
+                    }
+                }
+            }
+            valueBits = nextBits;
+        }
+    }
+
+    static final class BitWriter {
+        private byte[] bytes;
+        private long bitPosition;
+
+        BitWriter( int initialBytes ) {
+            this.bytes = new byte[initialBytes];
+        }
+
+        // writes the lowest width bits of value, most significant first
+        void write( long value, int width ) {
+            for ( int i = width - 1; i >= 0; i-- ) {
+                int byteIndex = (int)( bitPosition >>> 3 );
+                if ( byteIndex == bytes.length ) {
+                    bytes = Arrays.copyOf( bytes, bytes.length * 2 );
+                }
+                if ( ( ( value >>> i ) & 1 ) != 0 ) {
+                    bytes[byteIndex] |= 0x80 >>> ( bitPosition & 7 );
+                }
+                bitPosition++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf( bytes, (int)( ( bitPosition + 7 ) >>> 3 ) );
+        }
+    }
+
+    static final class BitReader {
+        private final byte[] bytes;
+        private long bitPosition;
+
+        BitReader( byte[] bytes ) {
+            this.bytes = bytes;
+        }
+
+        long read( int width ) {
+            if ( bitPosition + width > (long)bytes.length * 8 ) {
+                throw new IllegalArgumentException( "truncated MetricSet bit stream" );
+            }
+            long result = 0;
+            for ( int i = 0; i < width; i++ ) {
+                int bit = ( bytes[(int)( bitPosition >>> 3 )] >>> ( 7 - ( bitPosition & 7 ) ) ) & 1;
+                result = ( result << 1 ) | bit;
+                bitPosition++;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.bifroest.retentions;
+
+// Walks the points of a MetricSet without allocating. reset() points the cursor
+// at another set, so a single cursor can be reused for any number of sets.
+public final class MetricSetCursor implements MetricCursor {
+    private ValueStore store;
+    private long start;
+    private long step;
+    private int index;
+
+    public MetricSetCursor() {
+        this.index = -1;
+    }
+
+    public MetricSetCursor reset( MetricSet set ) {
+        this.store = set.store();
+        this.start = set.interval().start();
+        this.step = set.step();
+        this.index = -1;
+        return this;
+    }
+
+    @Override
+    public boolean next() {
+        if ( store == null || index + 1 >= store.length() ) {
+            index = store == null ? -1 : store.length();
+            return false;
+        }
+        index = store.nextIndex( index + 1 );
+        if ( index < 0 ) {
+            index = store.length();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long timestamp() {
+        return start + index * step;
+    }
+
+    @Override
+    public double value() {
+        return store.get( index );
+    }
+}
@@ -0,0 +1,464 @@
+package io.bifroest.retentions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.bifroest.commons.model.Interval;
+
+// Streams the JSON form of MetricSet.toJSON() without building a JSONObject.
+// Keys may come in any order when reading, unknown keys are skipped.
+public final class MetricSetJSON {
+    private static final int BUFFER_SIZE = 8192;
+    // Integral doubles up to 2^53 are exact and are written without going through a String.
+    // So are short decimals, mantissa / 10^k with a mantissa up to 2^53 and k up to
+    // MAX_FRACTION_DIGITS, the same form the reader parses without a String.
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+    private static final int MAX_FRACTION_DIGITS = 17;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private MetricSetJSON() {
+    }
+
+    public static void write( MetricSet set, OutputStream out ) throws IOException {
+        Writer writer = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
+        write( set, writer );
+        writer.flush();
+    }
+
+    public static void write( MetricSet set, Writer writer ) throws IOException {
+        new Output( writer ).writeSet( set );
+    }
+
+    public static MetricSet read( InputStream in ) throws IOException {
+        return read( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+    }
+
+    // Reads one object. The reader is read in blocks, so it may be consumed past the
+    // end of the object.
+    public static MetricSet read( Reader reader ) throws IOException {
+        return new Input( reader ).readSet();
+    }
+
+    private static final class Output {
+        private final Writer writer;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+
+        Output( Writer writer ) {
+            this.writer = writer;
+        }
+
+        void writeSet( MetricSet set ) throws IOException {
+            append( "{\"name\":" );
+            appendString( set.name() );
+            append( ",\"startTimestamp\":" );
+            appendLong( set.interval().start() );
+            append( ",\"step\":" );
+            appendLong( set.step() );
+            append( ",\"values\":[" );
+            int length = (int)( ( set.interval().end() - set.interval().start() ) / set.step() );
+            for ( int i = 0; i < length; i++ ) {
+                if ( i > 0 ) {
+                    append( ',' );
+                }
+                appendDouble( set.getValue( i ) );
+            }
+            append( "]}" );
+            writer.write( buffer, 0, position );
+            position = 0;
+        }
+
+        private void append( char c ) throws IOException {
+            if ( position == buffer.length ) {
+                writer.write( buffer, 0, position );
+                position = 0;
+            }
+            buffer[position++] = c;
+        }
+
+        private void append( String s ) throws IOException {
+            for ( int i = 0; i < s.length(); i++ ) {
+                append( s.charAt( i ) );
+            }
+        }
+
+        private void appendString( String s ) throws IOException {
+            append( '"' );
+            for ( int i = 0; i < s.length(); i++ ) {
+                char c = s.charAt( i );
+                if ( c == '"' || c == '\\' ) {
+                    append( '\\' );
+                    append( c );
+                } else if ( c < 0x20 ) {
+                    append( "\\u00" );
+                    append( Character.forDigit( c >> 4, 16 ) );
+                    append( Character.forDigit( c & 0xF, 16 ) );
+                } else {
+                    append( c );
+                }
+            }
+            append( '"' );
+        }
+
+        private void appendLong( long value ) throws IOException {
+            if ( value == Long.MIN_VALUE ) {
+                append( Long.toString( value ) );
+                return;
+            }
+            if ( value < 0 ) {
+                append( '-' );
+                value = -value;
+            }
+            long divisor = 1;
+            while ( value / divisor >= 10 ) {
+                divisor *= 10;
+            }
+            for ( ; divisor > 0; divisor /= 10 ) {
+                append( (char)( '0' + ( value / divisor ) % 10 ) );
+            }
+        }
+
+        private void appendDouble( double value ) throws IOException {
+            if ( Double.isNaN( value ) ) {
+                append( "null" );
+            } else if ( Double.isInfinite( value ) ) {
+                throw new IllegalArgumentException( "JSON does not allow non-finite numbers" );
+            } else if ( value == Math.rint( value ) && Math.abs( value ) <= MAX_EXACT_INTEGER
+                    && Double.doubleToRawLongBits( value ) != Double.doubleToRawLongBits( -0.0 ) ) {
+                appendLong( (long)value );
+            } else if ( !appendDecimal( value ) ) {
+                append( Double.toString( value ) );
+            }
+        }
+
+        // Writes value with the fewest fraction digits that the reader turns back into
+        // exactly this value, false if there are too many of them.
+        private boolean appendDecimal( double value ) throws IOException {
+            if ( value == 0 ) {
+                return false;
+            }
+            for ( int k = 1; k <= MAX_FRACTION_DIGITS; k++ ) {
+                double scaled = value * POWERS_OF_TEN[k];
+                if ( Math.abs( scaled ) > MAX_EXACT_INTEGER ) {
+                    return false;
+                }
+                if ( scaled != Math.rint( scaled ) || scaled / POWERS_OF_TEN[k] != value ) {
+                    continue;
+                }
+                long mantissa = (long)scaled;
+                if ( mantissa < 0 ) {
+                    append( '-' );
+                    mantissa = -mantissa;
+                }
+                long divisor = (long)POWERS_OF_TEN[k];
+                appendLong( mantissa / divisor );
+                append( '.' );
+                long fraction = mantissa % divisor;
+                for ( divisor /= 10; divisor > 0; divisor /= 10 ) {
+                    append( (char)( '0' + ( fraction / divisor ) % 10 ) );
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Input {
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private final StringBuilder text = new StringBuilder();
+
+        Input( Reader reader ) {
+            this.reader = reader;
+        }
+
+        MetricSet readSet() throws IOException {
+            String name = null;
+            Long start = null;
+            Long step = null;
+            double[] values = null;
+            int length = 0;
+
+            expect( '{' );
+            if ( peekSkippingWhitespace() == '}' ) {
+                next();
+            } else {
+                do {
+                    String key = readString();
+                    expect( ':' );
+                    switch ( key ) {
+                    case "name":
+                        name = readString();
+                        break;
+                    case "startTimestamp":
+                        start = readLong();
+                        break;
+                    case "step":
+                        step = readLong();
+                        break;
+                    case "values":
+                        values = new double[64];
+                        length = 0;
+                        expect( '[' );
+                        if ( peekSkippingWhitespace() == ']' ) {
+                            next();
+                            break;
+                        }
+                        do {
+                            if ( length == values.length ) {
+                                values = Arrays.copyOf( values, length * 2 );
+                            }
+                            values[length++] = readDoubleOrNull();
+                        } while ( separator( ']' ) );
+                        break;
+                    default:
+                        skipValue();
+                    }
+                } while ( separator( '}' ) );
+            }
+
+            if ( name == null || start == null || step == null || values == null ) {
+                throw new IOException( "MetricSet JSON needs name, startTimestamp, step and values" );
+            }
+            if ( step <= 0 ) {
+                throw new IOException( "step must be positive, got " + step );
+            }
+            if ( start % step != 0 ) {
+                throw new IOException( "startTimestamp " + start + " is not a multiple of step " + step );
+            }
+            MetricSet result;
+            try {
+                long end = Math.addExact( start, Math.multiplyExact( (long)length, step ) );
+                result = new MetricSet( name, new Interval( start, end ), step );
+            } catch ( ArithmeticException | IllegalArgumentException e ) {
+                throw new IOException( "invalid MetricSet " + name + ": " + e.getMessage(), e );
+            }
+            for ( int i = 0; i < length; i++ ) {
+                result.setValue( i, values[i] );
+            }
+            return result;
+        }
+
+        private int next() throws IOException {
+            if ( position == limit ) {
+                limit = reader.read( buffer, 0, buffer.length );
+                position = 0;
+                if ( limit <= 0 ) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            int c = next();
+            if ( c >= 0 ) {
+                position--;
+            }
+            return c;
+        }
+
+        private int peekSkippingWhitespace() throws IOException {
+            int c = peek();
+            while ( c == ' ' || c == '\t' || c == '\n' || c == '\r' ) {
+                next();
+                c = peek();
+            }
+            return c;
+        }
+
+        private void expect( char expected ) throws IOException {
+            int c = peekSkippingWhitespace();
+            if ( c != expected ) {
+                throw unexpected( c, "'" + expected + "'" );
+            }
+            next();
+        }
+
+        // true after a ',', false after the closing character
+        private boolean separator( char close ) throws IOException {
+            int c = peekSkippingWhitespace();
+            next();
+            if ( c == ',' ) {
+                return true;
+            } else if ( c == close ) {
+                return false;
+            }
+            throw unexpected( c, "',' or '" + close + "'" );
+        }
+
+        private IOException unexpected( int c, String expected ) {
+            return new IOException( "expected " + expected + " but got " + ( c < 0 ? "end of input" : "'" + (char)c + "'" ) );
+        }
+
+        private String readString() throws IOException {
+            expect( '"' );
+            text.setLength( 0 );
+            while ( true ) {
+                int c = next();
+                if ( c < 0 ) {
+                    throw unexpected( c, "'\"'" );
+                } else if ( c == '"' ) {
+                    return text.toString();
+                } else if ( c == '\\' ) {
+                    int escaped = next();
+                    switch ( escaped ) {
+                    case 'b': text.append( '\b' ); break;
+                    case 'f': text.append( '\f' ); break;
+                    case 'n': text.append( '\n' ); break;
+                    case 'r': text.append( '\r' ); break;
+                    case 't': text.append( '\t' ); break;
+                    case 'u':
+                        int code = 0;
+                        for ( int i = 0; i < 4; i++ ) {
+                            int digit = Character.digit( next(), 16 );
+                            if ( digit < 0 ) {
+                                throw new IOException( "invalid unicode escape" );
+                            }
+                            code = code * 16 + digit;
+                        }
+                        text.append( (char)code );
+                        break;
+                    default:
+                        if ( escaped < 0 ) {
+                            throw unexpected( escaped, "escaped character" );
+                        }
+                        text.append( (char)escaped );
+                    }
+                } else {
+                    text.append( (char)c );
+                }
+            }
+        }
+
+        private long readLong() throws IOException {
+            double value = readDoubleOrNull();
+            if ( Double.isNaN( value ) || value != Math.rint( value ) ) {
+                throw new IOException( "expected an integer" );
+            }
+            if ( Math.abs( value ) < MAX_EXACT_INTEGER ) {
+                return (long)value;
+            }
+            try {
+                return Long.parseLong( text.toString() );
+            } catch ( NumberFormatException e ) {
+                throw new IOException( "invalid integer " + text, e );
+            }
+        }
+
+        // Plain integers and short decimals are parsed without going through a String,
+        // mantissa / 10^k is exact for mantissas below 2^53 and k <= 22.
+        private double readDoubleOrNull() throws IOException {
+            int c = peekSkippingWhitespace();
+            if ( c == 'n' ) {
+                readLiteral( "null" );
+                return Double.NaN;
+            }
+            text.setLength( 0 );
+            boolean negative = false;
+            if ( c == '-' ) {
+                negative = true;
+                text.append( (char)next() );
+                c = peek();
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
+            boolean fraction = false;
+            boolean simple = true;
+            while ( true ) {
+                if ( c >= '0' && c <= '9' ) {
+                    if ( mantissa < 100000000000000000L ) {
+                        mantissa = mantissa * 10 + ( c - '0' );
+                        digits++;
+                        if ( fraction ) {
+                            fractionDigits++;
+                        }
+                    } else {
+                        simple = false;
+                    }
+                } else if ( c == '.' && !fraction ) {
+                    fraction = true;
+                } else if ( c == 'e' || c == 'E' || c == '+' || c == '-' ) {
+                    simple = false;
+                } else {
+                    break;
+                }
+                text.append( (char)next() );
+                c = peek();
+            }
+            if ( digits == 0 ) {
+                throw unexpected( c, "a number" );
+            }
+            if ( simple && mantissa <= MAX_EXACT_INTEGER && fractionDigits < POWERS_OF_TEN.length ) {
+                double value = mantissa / POWERS_OF_TEN[fractionDigits];
+                return negative ? -value : value;
+            }
+            try {
+                return Double.parseDouble( text.toString() );
+            } catch ( NumberFormatException e ) {
+                throw new IOException( "invalid number " + text, e );
+            }
+        }
+
+        private void readLiteral( String literal ) throws IOException {
+            for ( int i = 0; i < literal.length(); i++ ) {
+                int c = next();
+                if ( c != literal.charAt( i ) ) {
+                    throw unexpected( c, literal );
+                }
+            }
+        }
+
+        private void skipValue() throws IOException {
+            int c = peekSkippingWhitespace();
+            switch ( c ) {
+            case '"':
+                readString();
+                break;
+            case '{':
+                next();
+                if ( peekSkippingWhitespace() == '}' ) {
+                    next();
+                    break;
+                }
+                do {
+                    readString();
+                    expect( ':' );
+                    skipValue();
+                } while ( separator( '}' ) );
+                break;
+            case '[':
+                next();
+                if ( peekSkippingWhitespace() == ']' ) {
+                    next();
+                    break;
+                }
+                do {
+                    skipValue();
+                } while ( separator( ']' ) );
+                break;
+            case 't':
+                readLiteral( "true" );
+                break;
+            case 'f':
+                readLiteral( "false" );
+                break;
+            default:
+                readDoubleOrNull();
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package io.bifroest.retentions;
+
+// Receives the points of a MetricSet in timestamp order, empty slots are skipped.
+@FunctionalInterface
+public interface MetricVisitor {
+    void visit( long timestamp, double value );
+}
@@ -1,14 +1,16 @@
 package io.bifroest.retentions;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.Stack;
 import java.util.regex.Pattern;
@@ -16,69 +18,33 @@ import java.util.regex.Pattern;
 import org.apache.commons.collections4.map.LinkedMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.Marker;
-import org.apache.logging.log4j.MarkerManager;
 
-import io.bifroest.retentions.cache.AccessLevelMapCache;
-import io.bifroest.retentions.cache.AggregationFunctionMapCache;
-import io.bifroest.retentions.cache.ThreadLocalMapCache;
+import io.bifroest.retentions.cache.CacheConfiguration;
 import io.bifroest.commons.statistics.aggregation.ValueAggregation;
-import io.bifroest.commons.statistics.aggregation.ValueAggregationFactory;
-import io.bifroest.commons.statistics.cache.CacheTracker;
 
-public class MutableRetentionConfiguration implements RetentionConfiguration {
+public class MutableRetentionConfiguration implements CacheableRetentionConfiguration {
     private static final Logger log = LogManager.getLogger();
-    private static final Marker AGGREGATION_CONFIG_MARKER = MarkerManager.getMarker( "AGGREGATION_CONFIG_MARKER" );
 
     private final Map<Pattern, String> functionMap;
     private final Map<Pattern, String> accessLevelMap;
 
     private final Map<String, RetentionLevel> levels;
+    // ordinals are never reused, a level replaced by one with the same name keeps its ordinal
+    private final Map<String, Integer> ordinals;
+    private final List<RetentionLevel> levelsByOrdinal;
 
     private LinkedList<RetentionLevel> topologicalSort;
-    
-    private static volatile CacheTracker functionCacheTracker;
-    private static volatile CacheTracker accessLevelCacheTracker;
-
-
-    private static ThreadLocal<ThreadLocalMapCache> functionMapCache = new ThreadLocal<ThreadLocalMapCache>() {
-        protected ThreadLocalMapCache initialValue() {
-            log.trace( "Creating new FunctionMapCache" );
-            if ( functionCacheTracker == null ) {
-                synchronized ( this ) {
-                    if ( functionCacheTracker == null ) {
-                        functionCacheTracker = CacheTracker.storingIn( "ThreadLocalRetentionFunctionMapCache" );
-                    }
-                }
-            }
-            return new AggregationFunctionMapCache( functionCacheTracker, "RetentionFunctionMapCache" );
-        }
-    };
-    
-    private static ThreadLocal<ThreadLocalMapCache> accessLevelCache = new ThreadLocal<ThreadLocalMapCache>() {
-        protected ThreadLocalMapCache initialValue() {
-            log.trace( "Creating new FunctionMapCache" );
-            if ( accessLevelCacheTracker == null ) {
-                synchronized ( this ) {
-                    if ( accessLevelCacheTracker == null ) {
-                        accessLevelCacheTracker = CacheTracker.storingIn( "ThreadLocalAccessLevelCache" );
-                    }
-                }
-            }
-            return new AccessLevelMapCache(accessLevelCacheTracker, "AccessLevelMapCache" );
-        }
-    };
-    
-    
+    private boolean segmentTrie;
 
-    private static final Map<String, ValueAggregationFactory> aggregationFunctionFactories;
+    // compiled lazily from the patterns and levels, reset whenever anything is added
+    private volatile PatternClassifier classifier;
+    // the latest change, its target epoch is the epoch of this configuration
+    private volatile ConfigurationDiff lastChange;
 
-    static {
-        // counted valueaggregations by hand and added some
-        aggregationFunctionFactories = new HashMap<String, ValueAggregationFactory>( 10 );
-        for ( ValueAggregationFactory factory : ServiceLoader.load( ValueAggregationFactory.class ) ) {
-            aggregationFunctionFactories.put( factory.getFunctionName().toLowerCase(), factory );
-        }
+    // Switches all configurations between per-thread and shared classification caches.
+    // Calling this again with an equal configuration keeps the current caches.
+    public static void configureCaches( CacheConfiguration configuration ) {
+        ClassificationCaches.configure( configuration );
     }
 
     public MutableRetentionConfiguration( ) {
@@ -86,22 +52,105 @@ public class MutableRetentionConfiguration implements RetentionConfiguration {
         this.functionMap = new LinkedMap<>();
         this.accessLevelMap = new LinkedMap<>();
         this.levels = new HashMap<>();
+        this.ordinals = new HashMap<>();
+        this.levelsByOrdinal = new ArrayList<>();
+        this.lastChange = ConfigurationDiff.everything( -1, ConfigurationEpochs.next() );
+    }
+
+    // Changes invalidate the compiled patterns and the cached lookups they affect.
+    private void changed( int firstChangedFunction, int firstChangedAccessLevel, Set<String> changedLevels ) {
+        classifier = null;
+        lastChange = new ConfigurationDiff( lastChange.toEpoch(), ConfigurationEpochs.next(), firstChangedFunction, firstChangedAccessLevel, changedLevels );
+    }
+
+    @Override
+    public long epoch() {
+        return lastChange.toEpoch();
+    }
+
+    @Override
+    public ConfigurationDiff changesSince( long epoch ) {
+        ConfigurationDiff change = lastChange;
+        return change.fromEpoch() == epoch ? change : null;
+    }
+
+    // A frozen copy of the current state, safe to share between threads.
+    public RetentionConfigurationSnapshot snapshot() {
+        return snapshot( null );
+    }
+
+    // A frozen copy of the current state that replaces previous. Lookups cached for
+    // previous that the differences cannot affect stay cached.
+    public RetentionConfigurationSnapshot snapshot( RetentionConfigurationSnapshot previous ) {
+        return new RetentionConfigurationSnapshot( functionMap, accessLevelMap, levelsByOrdinal, getTopologicalSort(), segmentTrie, previous );
+    }
+
+    // Matches patterns made of whole name segments with a trie of segments instead
+    // of regular expressions. Names are classified the same either way, so cached
+    // lookups stay valid.
+    public void useSegmentTrie( boolean segmentTrie ) {
+        this.segmentTrie = segmentTrie;
+        classifier = null;
     }
 
     public void addFunctionEntry( String regex, String function ) {
         log.trace( "Adding new functionEntry {} {}", regex, function );
+        int index = functionMap.size();
         functionMap.put( Pattern.compile( regex ), function.toLowerCase() );
+        changed( index, ConfigurationDiff.UNCHANGED, Collections.<String> emptySet() );
     }
 
     public void addAccessLevelEntry( String regex, String name ) {
         log.trace( "Adding new accessLevelEntry {} {}", regex, name );
+        int index = accessLevelMap.size();
         accessLevelMap.put( Pattern.compile( regex ), name );
-
+        changed( ConfigurationDiff.UNCHANGED, index, Collections.<String> emptySet() );
     }
 
     public void addLevel( RetentionLevel level ) {
         log.trace( "Adding new Level {}", level.name() );
-        levels.put( level.name(), level );
+        RetentionLevel previous = levels.put( level.name(), level );
+        Integer ordinal = ordinals.get( level.name() );
+        if ( ordinal == null ) {
+            ordinals.put( level.name(), levelsByOrdinal.size() );
+            levelsByOrdinal.add( level );
+        } else {
+            levelsByOrdinal.set( ordinal, level );
+        }
+        topologicalSort = null;
+
+        // access level patterns naming a new level stop being skipped
+        int firstChangedAccessLevel = ConfigurationDiff.UNCHANGED;
+        if ( previous == null ) {
+            int index = 0;
+            for ( String accessLevel : accessLevelMap.values() ) {
+                if ( accessLevel.equals( level.name() ) ) {
+                    firstChangedAccessLevel = index;
+                    break;
+                }
+                index++;
+            }
+        }
+        boolean redefined = previous == null || !previous.equals( level ) || !Objects.equals( previous.next(), level.next() );
+        changed( ConfigurationDiff.UNCHANGED, firstChangedAccessLevel,
+                redefined ? Collections.singleton( level.name() ) : Collections.<String> emptySet() );
+    }
+
+    @Override
+    public int ordinalOf( RetentionLevel level ) {
+        Integer ordinal = ordinals.get( level.name() );
+        if ( ordinal == null || !levelsByOrdinal.get( ordinal ).equals( level ) ) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    @Override
+    public Optional<RetentionLevel> getLevelForOrdinal( int ordinal ) {
+        if ( ordinal < 0 || ordinal >= levelsByOrdinal.size() ) {
+            return Optional.empty();
+        }
+        return Optional.of( levelsByOrdinal.get( ordinal ) );
     }
 
     @Override
@@ -119,23 +168,12 @@ public class MutableRetentionConfiguration implements RetentionConfiguration {
 
     @Override
     public ValueAggregation findFunctionForMetric( String name ) {
-        return log.exit( aggregationFunctionFactories.get( functionMapCache.get().get( name, this ) ).createAggregation() );
+        return log.exit( PatternClassifier.aggregationFactory( ClassificationCaches.functionMapCache.get().get( name, this ) ).createAggregation() );
     }
 
     public String findAggregationNameThroughATonOfRegexes( String name ) {
         log.entry( name );
-        for ( Entry<Pattern, String> entry : functionMap.entrySet() ) {
-            if ( entry.getKey().matcher( name ).find() ) {
-                if ( aggregationFunctionFactories.containsKey( entry.getValue() ) ) {
-                    return log.exit( entry.getValue() );
-                } else {
-                    log.warn( AGGREGATION_CONFIG_MARKER, entry.getValue() + " is not a supported aggregation method - using average" );
-                    return log.exit( "average" );
-                }
-            }
-        }
-        log.debug( AGGREGATION_CONFIG_MARKER, "No aggregation function defined for " + name + " - using average" );
-        return log.exit( "average" );
+        return log.exit( classifier().findAggregationName( name ) );
     }
 
     @Override
@@ -145,30 +183,74 @@ public class MutableRetentionConfiguration implements RetentionConfiguration {
         if ( level.isPresent() ) {
             return Optional.of( new RetentionTable( level.get(), level.get().indexOf( timestamp ) ) );
         }
-        log.warn( "No AccessTable found for {} {}", name, timestamp );
         return log.exit( Optional.empty() );
     }
 
 	@Override
 	public Optional<RetentionLevel> findAccessLevelForMetric(String name) {
-	   String accessLevelName = accessLevelCache.get().get(name, this);
-	   if(levels.containsKey(accessLevelName) ){
+	   String accessLevelName = ClassificationCaches.accessLevelCache.get().get(name, this);
+	   if( accessLevelName != null && levels.containsKey(accessLevelName) ){
 	       return Optional.of(levels.get(accessLevelName));
 	   }
+	   UnclassifiedNames.report( name );
 	   return Optional.empty();
 	}
 	
 	public Optional<String> findAccessLevelForMetricWithoutCache( String metricName ){
 	    log.entry(metricName);
-	    for( Entry<Pattern, String> entry : accessLevelMap.entrySet() ){
-	        if( entry.getKey().matcher(metricName).find() && levels.containsKey( entry.getValue() ) ){
-	            return log.exit(Optional.of(levels.get(entry.getValue()).name()));
-	        }
+	    RetentionLevel level = classifier().findAccessLevel( metricName );
+	    if( level != null ){
+	        return log.exit(Optional.of(level.name()));
 	    }
-        log.warn("No AccessLevel found for {}", metricName);
+        UnclassifiedNames.report( metricName );
         return log.exit(Optional.empty());
 	}
 
+    @Override
+    public MetricPolicy findPolicyForMetric( String name ) {
+        MetricPolicy policy = ClassificationCaches.policyCache.get().get( name, this );
+        if ( policy.levelChain().isEmpty() ) {
+            UnclassifiedNames.report( name );
+        }
+        return policy;
+    }
+
+    public MetricPolicy findPolicyForMetricWithoutCache( String metricName ) {
+        log.entry( metricName );
+        return log.exit( classifier().findPolicy( metricName ) );
+    }
+
+    @Override
+    public int matchFunction( String name ) {
+        return classifier().matchFunction( name );
+    }
+
+    @Override
+    public int matchAccessLevel( String name ) {
+        return classifier().matchAccessLevel( name );
+    }
+
+    @Override
+    public long matchPolicy( String name ) {
+        return classifier().matchPolicy( name );
+    }
+
+    @Override
+    public String aggregationName( int functionMatch, String name ) {
+        return classifier().aggregationName( functionMatch, name );
+    }
+
+    @Override
+    public String accessLevelName( int accessLevelMatch ) {
+        RetentionLevel level = classifier().accessLevel( accessLevelMatch );
+        return level == null ? null : level.name();
+    }
+
+    @Override
+    public MetricPolicy policy( long policyMatch, String name ) {
+        return classifier().policy( policyMatch, name );
+    }
+
 	@Override
 	public Collection<RetentionLevel> getAllLevels() {
 		return levels.values();
@@ -185,6 +267,15 @@ public class MutableRetentionConfiguration implements RetentionConfiguration {
 		return accessLevels;
 	}
 
+    private PatternClassifier classifier() {
+        PatternClassifier result = classifier;
+        if ( result == null ) {
+            result = new PatternClassifier( functionMap, accessLevelMap, levels, segmentTrie );
+            classifier = result;
+        }
+        return result;
+    }
+
     @Override
     public List<RetentionLevel> getTopologicalSort() {
         if ( topologicalSort != null ) {
@@ -0,0 +1,214 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+import io.bifroest.commons.statistics.aggregation.ValueAggregationFactory;
+import io.bifroest.retentions.matcher.MultiPatternMatcher;
+import io.bifroest.retentions.matcher.PatternMatcher;
+import io.bifroest.retentions.matcher.SegmentTrieMatcher;
+
+// The function and access level patterns of a configuration compiled into one
+// MultiPatternMatcher, or SegmentTrieMatcher if asked for: function patterns
+// first, then access level patterns, both in declaration order. Immutable apart from the policies it hands out, which
+// only depend on the function and the access level, so all names share a handful
+// of them.
+final class PatternClassifier {
+    private static final Logger log = LogManager.getLogger();
+    private static final Marker AGGREGATION_CONFIG_MARKER = MarkerManager.getMarker( "AGGREGATION_CONFIG_MARKER" );
+
+    private static final Map<String, ValueAggregationFactory> aggregationFunctionFactories;
+
+    static {
+        // counted valueaggregations by hand and added some
+        aggregationFunctionFactories = new HashMap<String, ValueAggregationFactory>( 10 );
+        for ( ValueAggregationFactory factory : ServiceLoader.load( ValueAggregationFactory.class ) ) {
+            aggregationFunctionFactories.put( factory.getFunctionName().toLowerCase(), factory );
+        }
+    }
+
+    private final PatternMatcher matcher;
+    private final String[] functions;
+    private final String[] accessLevels;
+    private final Map<String, RetentionLevel> levels;
+    private final Map<String, MetricPolicy> policies;
+
+    PatternClassifier( Map<Pattern, String> functionMap, Map<Pattern, String> accessLevelMap, Map<String, RetentionLevel> levels, boolean segmentTrie ) {
+        List<Pattern> patterns = new ArrayList<>( functionMap.keySet() );
+        patterns.addAll( accessLevelMap.keySet() );
+        this.matcher = segmentTrie ? new SegmentTrieMatcher( patterns ) : new MultiPatternMatcher( patterns );
+        this.functions = functionMap.values().toArray( new String[functionMap.size()] );
+        this.accessLevels = accessLevelMap.values().toArray( new String[accessLevelMap.size()] );
+        this.levels = Collections.unmodifiableMap( new HashMap<>( levels ) );
+        this.policies = new ConcurrentHashMap<>();
+    }
+
+    static ValueAggregationFactory aggregationFactory( String functionName ) {
+        return aggregationFunctionFactories.get( functionName );
+    }
+
+    // The name of the registered function creating aggregations of the given class, null if there is none.
+    static String aggregationName( Class<? extends ValueAggregation> aggregationClass ) {
+        for ( Map.Entry<String, ValueAggregationFactory> factory : aggregationFunctionFactories.entrySet() ) {
+            if ( factory.getValue().createAggregation().getClass() == aggregationClass ) {
+                return factory.getKey();
+            }
+        }
+        return null;
+    }
+
+    String findAggregationName( String name ) {
+        return aggregationName( matchFunction( name ), name );
+    }
+
+    RetentionLevel findAccessLevel( String name ) {
+        return accessLevel( matchAccessLevel( name ) );
+    }
+
+    // One pass of the pattern prefilter answers both the function and the access level.
+    MetricPolicy findPolicy( String name ) {
+        return policy( matchPolicy( name ), name );
+    }
+
+    // Index of the first function pattern the name matches, -1 if there is none.
+    int matchFunction( String name ) {
+        return matchFunction( matcher.candidates( name ) );
+    }
+
+    // Index of the first access level pattern the name matches and whose level
+    // exists, -1 if there is none.
+    int matchAccessLevel( String name ) {
+        return matchAccessLevel( matcher.candidates( name ) );
+    }
+
+    long matchPolicy( String name ) {
+        PatternMatcher.Matches candidates = matcher.candidates( name );
+        return policyMatch( matchFunction( candidates ), matchAccessLevel( candidates ) );
+    }
+
+    private int matchFunction( PatternMatcher.Matches candidates ) {
+        return candidates.firstMatch( 0, functions.length );
+    }
+
+    private int matchAccessLevel( PatternMatcher.Matches candidates ) {
+        int end = functions.length + accessLevels.length;
+        int index = candidates.firstMatch( functions.length, end );
+        while ( index >= 0 ) {
+            if ( levels.containsKey( accessLevels[index - functions.length] ) ) {
+                return index - functions.length;
+            }
+            index = candidates.firstMatch( index + 1, end );
+        }
+        return -1;
+    }
+
+    String aggregationName( int functionMatch, String name ) {
+        if ( functionMatch >= 0 ) {
+            String function = functions[functionMatch];
+            if ( aggregationFunctionFactories.containsKey( function ) ) {
+                return function;
+            } else {
+                log.warn( AGGREGATION_CONFIG_MARKER, function + " is not a supported aggregation method - using average" );
+                return "average";
+            }
+        }
+        log.debug( AGGREGATION_CONFIG_MARKER, "No aggregation function defined for " + name + " - using average" );
+        return "average";
+    }
+
+    RetentionLevel accessLevel( int accessLevelMatch ) {
+        return accessLevelMatch < 0 ? null : levels.get( accessLevels[accessLevelMatch] );
+    }
+
+    MetricPolicy policy( long policyMatch, String name ) {
+        String functionName = aggregationName( functionMatch( policyMatch ), name );
+        RetentionLevel accessLevel = accessLevel( accessLevelMatch( policyMatch ) );
+        return policyFor( functionName, accessLevel );
+    }
+
+    // the function match in the upper, the access level match in the lower half
+    static long policyMatch( int functionMatch, int accessLevelMatch ) {
+        return ( (long)functionMatch << 32 ) | ( accessLevelMatch & 0xFFFFFFFFL );
+    }
+
+    static int functionMatch( long policyMatch ) {
+        return (int)( policyMatch >> 32 );
+    }
+
+    static int accessLevelMatch( long policyMatch ) {
+        return (int)policyMatch;
+    }
+
+    int functionCount() {
+        return functions.length;
+    }
+
+    Pattern functionPattern( int index ) {
+        return matcher.pattern( index );
+    }
+
+    String function( int index ) {
+        return functions[index];
+    }
+
+    int accessLevelCount() {
+        return accessLevels.length;
+    }
+
+    Pattern accessLevelPattern( int index ) {
+        return matcher.pattern( functions.length + index );
+    }
+
+    String accessLevelName( int index ) {
+        return accessLevels[index];
+    }
+
+    Map<String, RetentionLevel> levels() {
+        return levels;
+    }
+
+    // Changes whenever a pattern index could stand for something else or a name
+    // could match another pattern, but not when only level definitions change.
+    long fingerprint() {
+        StringBuilder description = new StringBuilder();
+        for ( int i = 0; i < functions.length; i++ ) {
+            Pattern pattern = functionPattern( i );
+            description.append( 'f' ).append( pattern.pattern() ).append( '\0' ).append( pattern.flags() )
+                    .append( '\0' ).append( functions[i] ).append( '\0' );
+        }
+        for ( int i = 0; i < accessLevels.length; i++ ) {
+            Pattern pattern = accessLevelPattern( i );
+            description.append( 'a' ).append( pattern.pattern() ).append( '\0' ).append( pattern.flags() )
+                    .append( '\0' ).append( accessLevels[i] ).append( levels.containsKey( accessLevels[i] ) ? '+' : '-' );
+        }
+        return ClassificationIndex.hash( description );
+    }
+
+    private MetricPolicy policyFor( String functionName, RetentionLevel accessLevel ) {
+        String key = accessLevel == null ? functionName : functionName + '/' + accessLevel.name();
+        MetricPolicy policy = policies.get( key );
+        if ( policy == null ) {
+            List<RetentionLevel> chain = new ArrayList<>();
+            RetentionLevel level = accessLevel;
+            while ( level != null && !chain.contains( level ) ) {
+                chain.add( level );
+                level = levels.get( level.next() );
+            }
+            policy = new MetricPolicy( functionName, aggregationFunctionFactories.get( functionName ), accessLevel, chain );
+            policies.put( key, policy );
+        }
+        return policy;
+    }
+}
@@ -0,0 +1,135 @@
+package io.bifroest.retentions;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import io.bifroest.commons.model.Interval;
+
+// The result of RetentionQueryPlanner: consecutive segments of the requested
+// interval in time order, each one read from a single level. Tables are only
+// created while iterating.
+public final class QueryPlan implements Iterable<QueryPlan.Segment> {
+    private final String name;
+    private final Interval interval;
+    private final List<Segment> segments;
+
+    QueryPlan( String name, Interval interval, List<Segment> segments ) {
+        this.name = name;
+        this.interval = interval;
+        this.segments = Collections.unmodifiableList( segments );
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Interval interval() {
+        return interval;
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    @Override
+    public Iterator<Segment> iterator() {
+        return segments.iterator();
+    }
+
+    // all tables of all segments in time order
+    public Iterable<RetentionTable> tables() {
+        return () -> new Iterator<RetentionTable>() {
+            private int segment = 0;
+            private Iterator<RetentionTable> tables = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while ( !tables.hasNext() && segment < segments.size() ) {
+                    tables = segments.get( segment++ ).tables().iterator();
+                }
+                return tables.hasNext();
+            }
+
+            @Override
+            public RetentionTable next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                return tables.next();
+            }
+        };
+    }
+
+    public long tableCount() {
+        long result = 0;
+        for ( Segment segment : segments ) {
+            result += segment.tableCount();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlan[" + name + "@" + interval + " " + segments + "]";
+    }
+
+    public static final class Segment {
+        private final RetentionLevel level;
+        private final Interval interval;
+
+        Segment( RetentionLevel level, Interval interval ) {
+            this.level = level;
+            this.interval = interval;
+        }
+
+        public RetentionLevel level() {
+            return level;
+        }
+
+        public Interval interval() {
+            return interval;
+        }
+
+        public long firstBlock() {
+            return level.indexOf( interval.start() );
+        }
+
+        public long lastBlock() {
+            return level.indexOf( interval.end() - 1 );
+        }
+
+        public long tableCount() {
+            return lastBlock() - firstBlock() + 1;
+        }
+
+        public Iterable<RetentionTable> tables() {
+            return () -> new Iterator<RetentionTable>() {
+                private long block = firstBlock();
+
+                @Override
+                public boolean hasNext() {
+                    return block <= lastBlock();
+                }
+
+                @Override
+                public RetentionTable next() {
+                    if ( !hasNext() ) {
+                        throw new NoSuchElementException();
+                    }
+                    return new RetentionTable( level, block++ );
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return level.name() + "@" + interval;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package io.bifroest.retentions;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import io.bifroest.commons.model.Metric;
 import io.bifroest.commons.statistics.aggregation.ValueAggregation;
@@ -17,10 +20,41 @@ public interface RetentionConfiguration {
     List<RetentionLevel> getAllAccessLevels();
     List<RetentionLevel> getTopologicalSort();
 
+
+    // Levels are numbered densely from 0, in the order getAllLevels() returns them
+    // unless an implementation says otherwise. -1 for levels that are not part of
+    // this configuration. The defaults walk all levels, implementations should override them.
+    default int ordinalOf( RetentionLevel level ) {
+        int ordinal = 0;
+        for ( RetentionLevel candidate : getAllLevels() ) {
+            if ( candidate.equals( level ) ) {
+                return ordinal;
+            }
+            ordinal++;
+        }
+        return -1;
+    }
+
+    default Optional<RetentionLevel> getLevelForOrdinal( int ordinal ) {
+        if ( ordinal < 0 ) {
+            return Optional.empty();
+        }
+        return getAllLevels().stream().skip( ordinal ).findFirst();
+    }
+
     default ValueAggregation findFunctionForMetric( Metric metric ) {
         return findFunctionForMetric( metric.name() );
     }
 
+    // Implementations should override this, the default runs every single lookup on its own.
+    default MetricPolicy findPolicyForMetric( String name ) {
+        return MetricPolicy.lookUp( this, name );
+    }
+
+    default MetricPolicy findPolicyForMetric( Metric metric ) {
+        return findPolicyForMetric( metric.name() );
+    }
+
     default Optional<RetentionTable> findAccessTableForMetric( Metric metric ) {
         return findAccessTableForMetric( metric.name(), metric.timestamp() );
     }
@@ -33,4 +67,15 @@ public interface RetentionConfiguration {
         return getLevelForName( metric.name() );
     }
 
+    // Classifies every distinct name once, in parallel. Meant for batches far larger
+    // than the classification caches, implementations should not fill the caches.
+    default Classifications classifyAll( Collection<String> names ) {
+        return Classifications.classify( this, names, this::findPolicyForMetric );
+    }
+
+    default Classifications classifyAll( Stream<String> names ) {
+        Collection<String> distinct = names.collect( Collectors.toCollection( LinkedHashSet::new ) );
+        return classifyAll( distinct );
+    }
+
 }
@@ -0,0 +1,275 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+
+// An immutable RetentionConfiguration, created by MutableRetentionConfiguration.snapshot().
+// Patterns are compiled and all derived lists are computed up front, so readers
+// never wait for or see a partly built configuration. Levels are kept in arrays
+// indexed by ordinal.
+public final class RetentionConfigurationSnapshot implements CacheableRetentionConfiguration {
+    private static final Logger log = LogManager.getLogger();
+
+    private final long epoch;
+    private final ConfigurationDiff changes;
+    private final long fingerprint;
+    // consulted before the patterns, null if there is none
+    private volatile ClassificationIndex index;
+    private final PatternClassifier classifier;
+    private final RetentionLevel[] levelsByOrdinal;
+    // ordinal of the next level, -1 if there is none
+    private final int[] nextOrdinals;
+    private final Map<String, Integer> ordinals;
+    private final Collection<RetentionLevel> allLevels;
+    private final List<RetentionLevel> allAccessLevels;
+    private final List<RetentionLevel> topologicalSort;
+
+    RetentionConfigurationSnapshot( Map<Pattern, String> functionMap, Map<Pattern, String> accessLevelMap, List<RetentionLevel> levelsByOrdinal, List<RetentionLevel> topologicalSort, boolean segmentTrie, RetentionConfigurationSnapshot previous ) {
+        this.epoch = ConfigurationEpochs.next();
+        this.levelsByOrdinal = levelsByOrdinal.toArray( new RetentionLevel[levelsByOrdinal.size()] );
+
+        Map<String, Integer> ordinals = new HashMap<>();
+        Map<String, RetentionLevel> levels = new HashMap<>();
+        for ( int i = 0; i < this.levelsByOrdinal.length; i++ ) {
+            ordinals.put( this.levelsByOrdinal[i].name(), i );
+            levels.put( this.levelsByOrdinal[i].name(), this.levelsByOrdinal[i] );
+        }
+        this.ordinals = Collections.unmodifiableMap( ordinals );
+        this.nextOrdinals = new int[this.levelsByOrdinal.length];
+        for ( int i = 0; i < this.levelsByOrdinal.length; i++ ) {
+            Integer next = ordinals.get( this.levelsByOrdinal[i].next() );
+            nextOrdinals[i] = next == null ? -1 : next;
+        }
+
+        this.classifier = new PatternClassifier( new LinkedHashMap<>( functionMap ), new LinkedHashMap<>( accessLevelMap ), levels, segmentTrie );
+        this.fingerprint = classifier.fingerprint();
+        this.changes = previous == null
+                ? ConfigurationDiff.everything( -1, epoch )
+                : ConfigurationDiff.between( previous.epoch, epoch, previous.classifier, classifier );
+        this.allLevels = Collections.unmodifiableList( Arrays.asList( this.levelsByOrdinal.clone() ) );
+        Set<RetentionLevel> accessLevels = new LinkedHashSet<>();
+        for ( String name : accessLevelMap.values() ) {
+            RetentionLevel level = levels.get( name );
+            if ( level == null ) {
+                log.warn( "Access level {} is not a configured level", name );
+            } else {
+                accessLevels.add( level );
+            }
+        }
+        this.allAccessLevels = Collections.unmodifiableList( new ArrayList<>( accessLevels ) );
+        this.topologicalSort = Collections.unmodifiableList( new ArrayList<>( topologicalSort ) );
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public ConfigurationDiff changesSince( long epoch ) {
+        return changes.fromEpoch() == epoch ? changes : null;
+    }
+
+    // Identifies the patterns, see useIndex().
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    // Names found in the index skip the patterns, all other names are recorded in it.
+    // The index must have been built for the same patterns.
+    public void useIndex( ClassificationIndex index ) {
+        if ( index != null && index.fingerprint() != fingerprint ) {
+            throw new IllegalArgumentException( "classification index was built for other patterns" );
+        }
+        this.index = index;
+    }
+
+    // What changed compared to the snapshot this one replaced.
+    public ConfigurationDiff changes() {
+        return changes;
+    }
+
+    @Override
+    public ValueAggregation findFunctionForMetric( String name ) {
+        return PatternClassifier.aggregationFactory( ClassificationCaches.functionMapCache.get().get( name, this ) ).createAggregation();
+    }
+
+    public String findAggregationNameThroughATonOfRegexes( String name ) {
+        return classifier.findAggregationName( name );
+    }
+
+    @Override
+    public MetricPolicy findPolicyForMetric( String name ) {
+        MetricPolicy policy = ClassificationCaches.policyCache.get().get( name, this );
+        if ( policy.levelChain().isEmpty() ) {
+            UnclassifiedNames.report( name );
+        }
+        return policy;
+    }
+
+    public MetricPolicy findPolicyForMetricWithoutCache( String metricName ) {
+        return classifier.findPolicy( metricName );
+    }
+
+    @Override
+    public int matchFunction( String name ) {
+        return index == null ? classifier.matchFunction( name ) : PatternClassifier.functionMatch( matchPolicy( name ) );
+    }
+
+    @Override
+    public int matchAccessLevel( String name ) {
+        return index == null ? classifier.matchAccessLevel( name ) : PatternClassifier.accessLevelMatch( matchPolicy( name ) );
+    }
+
+    @Override
+    public long matchPolicy( String name ) {
+        ClassificationIndex current = index;
+        if ( current == null ) {
+            return classifier.matchPolicy( name );
+        }
+        long match = current.find( name );
+        if ( match == ClassificationIndex.NOT_FOUND ) {
+            match = classifier.matchPolicy( name );
+            // names without an access level are never stored, mostly junk that is not worth a slot
+            if ( classifier.accessLevel( PatternClassifier.accessLevelMatch( match ) ) != null ) {
+                current.record( name, match );
+            }
+        }
+        return match;
+    }
+
+    // Looks names up like matchPolicy(), but records the new ones in one go after
+    // the parallel part instead of taking the index lock for each of them.
+    @Override
+    public Classifications classifyAll( Collection<String> names ) {
+        ClassificationIndex current = index;
+        if ( current == null ) {
+            return CacheableRetentionConfiguration.super.classifyAll( names );
+        }
+        String[] distinct = Classifications.distinct( names );
+        long[] matches = new long[distinct.length];
+        boolean[] record = new boolean[distinct.length];
+        IntStream.range( 0, distinct.length ).parallel().forEach( i -> {
+            long match = current.find( distinct[i] );
+            if ( match == ClassificationIndex.NOT_FOUND ) {
+                match = classifier.matchPolicy( distinct[i] );
+                record[i] = classifier.accessLevel( PatternClassifier.accessLevelMatch( match ) ) != null;
+            }
+            matches[i] = match;
+        } );
+        current.recordAll( distinct, matches, record );
+
+        MetricPolicy[] policies = new MetricPolicy[distinct.length];
+        for ( int i = 0; i < distinct.length; i++ ) {
+            policies[i] = classifier.policy( matches[i], distinct[i] );
+        }
+        return Classifications.of( this, distinct, policies );
+    }
+
+    @Override
+    public String aggregationName( int functionMatch, String name ) {
+        return classifier.aggregationName( functionMatch, name );
+    }
+
+    @Override
+    public String accessLevelName( int accessLevelMatch ) {
+        RetentionLevel level = classifier.accessLevel( accessLevelMatch );
+        return level == null ? null : level.name();
+    }
+
+    @Override
+    public MetricPolicy policy( long policyMatch, String name ) {
+        return classifier.policy( policyMatch, name );
+    }
+
+    @Override
+    public Optional<RetentionTable> findAccessTableForMetric( String name, long timestamp ) {
+        Optional<RetentionLevel> level = findAccessLevelForMetric( name );
+        if ( level.isPresent() ) {
+            return Optional.of( new RetentionTable( level.get(), level.get().indexOf( timestamp ) ) );
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<RetentionLevel> findAccessLevelForMetric( String name ) {
+        String accessLevelName = ClassificationCaches.accessLevelCache.get().get( name, this );
+        if ( accessLevelName == null ) {
+            UnclassifiedNames.report( name );
+            return Optional.empty();
+        }
+        return getLevelForName( accessLevelName );
+    }
+
+    public Optional<String> findAccessLevelForMetricWithoutCache( String metricName ) {
+        RetentionLevel level = classifier.findAccessLevel( metricName );
+        if ( level != null ) {
+            return Optional.of( level.name() );
+        }
+        UnclassifiedNames.report( metricName );
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<RetentionLevel> getNextLevel( RetentionLevel level ) {
+        int ordinal = ordinalOf( level );
+        if ( ordinal >= 0 ) {
+            return getLevelForOrdinal( nextOrdinals[ordinal] );
+        }
+        return getLevelForName( level.next() );
+    }
+
+    @Override
+    public Optional<RetentionLevel> getLevelForName( String levelname ) {
+        Integer ordinal = ordinals.get( levelname );
+        return ordinal == null ? Optional.empty() : Optional.of( levelsByOrdinal[ordinal] );
+    }
+
+    @Override
+    public int ordinalOf( RetentionLevel level ) {
+        Integer ordinal = ordinals.get( level.name() );
+        if ( ordinal == null || !levelsByOrdinal[ordinal].equals( level ) ) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    @Override
+    public Optional<RetentionLevel> getLevelForOrdinal( int ordinal ) {
+        if ( ordinal < 0 || ordinal >= levelsByOrdinal.length ) {
+            return Optional.empty();
+        }
+        return Optional.of( levelsByOrdinal[ordinal] );
+    }
+
+    @Override
+    public Collection<RetentionLevel> getAllLevels() {
+        return allLevels;
+    }
+
+    @Override
+    public List<RetentionLevel> getAllAccessLevels() {
+        return allAccessLevels;
+    }
+
+    @Override
+    public List<RetentionLevel> getTopologicalSort() {
+        return topologicalSort;
+    }
+}
@@ -0,0 +1,92 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.commons.model.Interval;
+
+// Works out which levels and tables hold the data of a metric for an interval.
+// Every level of the metric's chain keeps its last blocks() blocks, counting the
+// block containing now. Parts of the interval no level keeps anymore are left out
+// of the plan.
+public final class RetentionQueryPlanner {
+    private static final Logger log = LogManager.getLogger();
+
+    public enum Resolution {
+        // the level with the smallest frequency still keeping the data
+        FINEST,
+        // the level with the largest frequency keeping the data
+        COARSEST
+    }
+
+    private final RetentionConfiguration retentions;
+
+    public RetentionQueryPlanner( RetentionConfiguration retentions ) {
+        this.retentions = retentions;
+    }
+
+    public QueryPlan plan( String name, Interval interval, long now, Resolution resolution ) {
+        log.entry( name, interval, now, resolution );
+        List<RetentionLevel> chain = retentions.findPolicyForMetric( name ).levelChain();
+
+        // every point where the set of levels keeping the data changes
+        TreeSet<Long> boundaries = new TreeSet<>();
+        boundaries.add( interval.start() );
+        boundaries.add( interval.end() );
+        for ( RetentionLevel level : chain ) {
+            Interval retained = retained( level, now );
+            if ( interval.contains( retained.start() ) ) {
+                boundaries.add( retained.start() );
+            }
+            if ( interval.contains( retained.end() ) ) {
+                boundaries.add( retained.end() );
+            }
+        }
+
+        List<QueryPlan.Segment> segments = new ArrayList<>();
+        Long start = null;
+        RetentionLevel current = null;
+        for ( long boundary : boundaries ) {
+            if ( start != null && start < boundary ) {
+                RetentionLevel level = choose( chain, start, boundary, now, resolution );
+                if ( level != null && level.equals( current ) ) {
+                    // extend the previous segment
+                    QueryPlan.Segment previous = segments.remove( segments.size() - 1 );
+                    segments.add( new QueryPlan.Segment( level, new Interval( previous.interval().start(), boundary ) ) );
+                } else if ( level != null ) {
+                    segments.add( new QueryPlan.Segment( level, new Interval( start, boundary ) ) );
+                }
+                current = level;
+            }
+            start = boundary;
+        }
+        return log.exit( new QueryPlan( name, interval, segments ) );
+    }
+
+    // the blocks of level that still exist at now
+    static Interval retained( RetentionLevel level, long now ) {
+        long lastBlock = level.indexOf( now );
+        long firstBlock = Math.max( 0, lastBlock - level.blocks() + 1 );
+        return new Interval( firstBlock * level.blockSize(), ( lastBlock + 1 ) * level.blockSize() );
+    }
+
+    private static RetentionLevel choose( List<RetentionLevel> chain, long start, long end, long now, Resolution resolution ) {
+        RetentionLevel result = null;
+        for ( RetentionLevel level : chain ) {
+            Interval retained = retained( level, now );
+            if ( retained.start() > start || retained.end() < end ) {
+                continue;
+            }
+            if ( result == null
+                    || ( resolution == Resolution.FINEST && level.compareTo( result ) < 0 )
+                    || ( resolution == Resolution.COARSEST && level.compareTo( result ) > 0 ) ) {
+                result = level;
+            }
+        }
+        return result;
+    }
+}
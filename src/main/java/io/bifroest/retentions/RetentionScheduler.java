@@ -0,0 +1,136 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Works out which tables are due for rollup into the next level and which ones
+// have expired. A block is due for rollup once it is complete, it expires once it
+// is older than the last blocks() blocks of its level.
+//
+// The scheduler keeps the known blocks of every level sorted, so advance() only
+// looks at the blocks that crossed a boundary since the last call. Tasks are
+// assumed to be carried out: tables a rollup writes to are known from then on,
+// and dropped tables are forgotten.
+public final class RetentionScheduler {
+    private static final Logger log = LogManager.getLogger();
+
+    private final RetentionConfiguration retentions;
+    // in topological order, sources before the levels they roll up into
+    private final List<LevelState> states;
+    private final Map<String, LevelState> statesByName;
+
+    public RetentionScheduler( RetentionConfiguration retentions ) {
+        this.retentions = retentions;
+        this.states = new ArrayList<>();
+        this.statesByName = new HashMap<>();
+        for ( RetentionLevel level : retentions.getTopologicalSort() ) {
+            LevelState state = new LevelState( level, retentions.getNextLevel( level ).orElse( null ) );
+            states.add( state );
+            statesByName.put( level.name(), state );
+        }
+    }
+
+    // Names that aren't tables of this configuration are skipped.
+    public void addTables( Collection<String> tableNames ) {
+        for ( String tableName : tableNames ) {
+            if ( RetentionTable.canCreateTable( tableName, retentions ) ) {
+                addTable( new RetentionTable( tableName, retentions ) );
+            } else {
+                log.debug( "Ignoring table {}", tableName );
+            }
+        }
+    }
+
+    public void addTable( RetentionTable table ) {
+        LevelState state = statesByName.get( table.level().name() );
+        if ( state == null ) {
+            throw new IllegalArgumentException( "level " + table.level() + " is not part of the configuration" );
+        }
+        state.add( table.block() );
+    }
+
+    // All work due at now: the rollups in dependency order, then the drops.
+    public List<RetentionTask> advance( long now ) {
+        log.entry( now );
+        List<RetentionTask> rollups = new ArrayList<>();
+        List<RetentionTask> drops = new ArrayList<>();
+        for ( LevelState state : states ) {
+            RetentionLevel level = state.level;
+            long current = level.indexOf( now );
+            if ( state.next != null ) {
+                Iterator<Long> complete = state.pendingRollup.headSet( current, false ).iterator();
+                while ( complete.hasNext() ) {
+                    long block = complete.next();
+                    complete.remove();
+                    rollups.add( new RetentionTask( RetentionTask.Type.ROLLUP, new RetentionTable( level, block ), state.next ) );
+                    statesByName.get( state.next.name() ).addCovering( level, block );
+                }
+            }
+            Iterator<Long> expired = state.existing.headSet( current - level.blocks() + 1, false ).iterator();
+            while ( expired.hasNext() ) {
+                long block = expired.next();
+                if ( state.pendingRollup.contains( block ) ) {
+                    // cannot happen with blocks() >= 1, a block expires after it is complete
+                    continue;
+                }
+                expired.remove();
+                drops.add( new RetentionTask( RetentionTask.Type.DROP, new RetentionTable( level, block ), null ) );
+            }
+        }
+        rollups.addAll( drops );
+        return log.exit( rollups );
+    }
+
+    public int tableCount() {
+        int result = 0;
+        for ( LevelState state : states ) {
+            result += state.existing.size();
+        }
+        return result;
+    }
+
+    public Optional<Long> oldestTable( RetentionLevel level ) {
+        LevelState state = statesByName.get( level.name() );
+        if ( state == null || state.existing.isEmpty() ) {
+            return Optional.empty();
+        }
+        return Optional.of( state.existing.first() );
+    }
+
+    private static final class LevelState {
+        private final RetentionLevel level;
+        private final RetentionLevel next;
+        private final NavigableSet<Long> existing = new TreeSet<>();
+        private final NavigableSet<Long> pendingRollup = new TreeSet<>();
+
+        LevelState( RetentionLevel level, RetentionLevel next ) {
+            this.level = level;
+            this.next = next;
+        }
+
+        void add( long block ) {
+            if ( existing.add( block ) && next != null ) {
+                pendingRollup.add( block );
+            }
+        }
+
+        // the blocks of this level a rollup of block of source writes to
+        void addCovering( RetentionLevel source, long block ) {
+            long start = block * source.blockSize();
+            long end = start + source.blockSize();
+            for ( long covering = level.indexOf( start ); covering <= level.indexOf( end - 1 ); covering++ ) {
+                add( covering );
+            }
+        }
+    }
+}
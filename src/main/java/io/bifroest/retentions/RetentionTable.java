@@ -5,7 +5,6 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -22,12 +21,13 @@ public final class RetentionTable implements Comparable<RetentionTable> {
 
     private final RetentionLevel level;
     private final long block;
+    private final String tableName;
 
     public RetentionTable( String tablename, RetentionConfiguration retentions ) {
-        Matcher matcher = TABLE_REGEX.matcher( tablename );
-        if ( matcher.matches() ) {
-            String levelname = matcher.group( "level" ).toLowerCase();
-            this.block = Long.parseLong( matcher.group( "block" ) );
+        int separator = separatorIndex( tablename );
+        if ( separator >= 0 ) {
+            String levelname = tablename.substring( 1, separator ).toLowerCase();
+            this.block = Long.parseLong( tablename.substring( separator + SEPARATOR_OF_MADNESS.length() ) );
             Optional<RetentionLevel> optLevel = retentions.getLevelForName( levelname );
             if ( optLevel.isPresent() ) {
                 this.level = optLevel.get();
@@ -35,15 +35,16 @@ public final class RetentionTable implements Comparable<RetentionTable> {
             else {
                 throw new IllegalArgumentException( "tablename: <" + tablename + ">, levelname: <" + levelname + ">" );
             }
+            this.tableName = tableName( level, block );
         } else {
             throw new IllegalArgumentException( "Table " + tablename + " doesn't match format." );
         }
     }
 
     public static boolean canCreateTable( String tablename, RetentionConfiguration retentions ) {
-        Matcher matcher = TABLE_REGEX.matcher( tablename );
-        if ( matcher.matches() ) {
-            String levelname = matcher.group( "level" ).toLowerCase();
+        int separator = separatorIndex( tablename );
+        if ( separator >= 0 ) {
+            String levelname = tablename.substring( 1, separator ).toLowerCase();
             Optional<RetentionLevel> optLevel = retentions.getLevelForName( levelname );
             return optLevel.isPresent();
         } else {
@@ -51,20 +52,72 @@ public final class RetentionTable implements Comparable<RetentionTable> {
         }
     }
 
+    // Does the same as matching TABLE_REGEX: returns where the level name ends and the
+    // separator starts, or -1 if the name doesn't match. \w+ is greedy, so the level
+    // name reaches up to the last separator, which has to be followed by digits only.
+    static int separatorIndex( CharSequence tablename ) {
+        int length = tablename.length();
+        if ( length < 1 + 1 + SEPARATOR_OF_MADNESS.length() + 1 ) {
+            return -1;
+        }
+        char first = tablename.charAt( 0 );
+        if ( first != 'g' && first != 'G' ) {
+            return -1;
+        }
+        int digits = length;
+        while ( digits > 0 && isDigit( tablename.charAt( digits - 1 ) ) ) {
+            digits--;
+        }
+        // "0X0" ends with a digit, so the digit run includes its last character
+        int separator = digits - 2;
+        if ( length - digits < 2 || separator < 2 || tablename.charAt( digits ) != '0' ) {
+            return -1;
+        }
+        char x = tablename.charAt( separator + 1 );
+        if ( tablename.charAt( separator ) != '0' || ( x != 'x' && x != 'X' ) ) {
+            return -1;
+        }
+        for ( int i = 1; i < separator; i++ ) {
+            if ( !isWordCharacter( tablename.charAt( i ) ) ) {
+                return -1;
+            }
+        }
+        return separator;
+    }
+
+    private static boolean isDigit( char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordCharacter( char c ) {
+        return isDigit( c ) || ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || c == '_';
+    }
+
     public RetentionTable( RetentionLevel level, long block ) {
-        // this.strategy = strategy;
+        this( level, block, tableName( level, block ) );
+    }
+
+    RetentionTable( RetentionLevel level, long block, String tableName ) {
         this.level = level;
         this.block = block;
+        this.tableName = tableName;
 
-        if ( tableName().length() > 32 ) {
+        if ( tableName.length() > 32 ) {
             throw new IllegalStateException( "table name too long" );
         }
 
-        if ( !StringUtils.isAlphanumeric( tableName() ) ) {
-            throw new IllegalStateException( "table name " + tableName() + " is not alphanumeric" );
+        if ( !StringUtils.isAlphanumeric( tableName ) ) {
+            throw new IllegalStateException( "table name " + tableName + " is not alphanumeric" );
         }
     }
 
+    static String tableName( RetentionLevel level, long block ) {
+        StringBuilder result = new StringBuilder( "g" );
+        result.append( level.name() );
+        result.append( SEPARATOR_OF_MADNESS ).append( block );
+        return result.toString();
+    }
+
     public RetentionLevel level() {
         return level;
     }
@@ -86,10 +139,7 @@ public final class RetentionTable implements Comparable<RetentionTable> {
     }
 
     public String tableName() {
-        StringBuilder result = new StringBuilder( "g" );
-        result.append( level.name() );
-        result.append( SEPARATOR_OF_MADNESS ).append( block );
-        return result.toString();
+        return tableName;
     }
 
     @Override
@@ -0,0 +1,51 @@
+package io.bifroest.retentions;
+
+import java.util.Optional;
+
+// A RetentionTable packed into a long: the level ordinal of its configuration in
+// the upper 16 bits, the block in the lower 48 bits. Keys of the same level sort
+// by block.
+public final class RetentionTableKey {
+    public static final int MAX_ORDINAL = ( 1 << 16 ) - 1;
+    public static final long MAX_BLOCK = ( 1L << 48 ) - 1;
+
+    private static final int BLOCK_BITS = 48;
+
+    private RetentionTableKey() {
+    }
+
+    public static long encode( int ordinal, long block ) {
+        if ( ordinal < 0 || ordinal > MAX_ORDINAL ) {
+            throw new IllegalArgumentException( String.format( "ordinal(%d) outside of [0, %d]", ordinal, MAX_ORDINAL ) );
+        }
+        if ( block < 0 || block > MAX_BLOCK ) {
+            throw new IllegalArgumentException( String.format( "block(%d) outside of [0, %d]", block, MAX_BLOCK ) );
+        }
+        return ( (long)ordinal << BLOCK_BITS ) | block;
+    }
+
+    // the key of the table of level holding timestamp
+    public static long encode( int ordinal, RetentionLevel level, long timestamp ) {
+        return encode( ordinal, level.indexOf( timestamp ) );
+    }
+
+    public static long encode( RetentionTable table, RetentionConfiguration retentions ) {
+        int ordinal = retentions.ordinalOf( table.level() );
+        if ( ordinal < 0 ) {
+            throw new IllegalArgumentException( "level " + table.level() + " is not part of the configuration" );
+        }
+        return encode( ordinal, table.block() );
+    }
+
+    public static int ordinal( long key ) {
+        return (int)( key >>> BLOCK_BITS );
+    }
+
+    public static long block( long key ) {
+        return key & MAX_BLOCK;
+    }
+
+    public static Optional<RetentionTable> decode( long key, RetentionConfiguration retentions ) {
+        return retentions.getLevelForOrdinal( ordinal( key ) ).map( level -> new RetentionTable( level, block( key ) ) );
+    }
+}
@@ -0,0 +1,66 @@
+package io.bifroest.retentions;
+
+import java.util.Optional;
+
+import io.bifroest.retentions.util.ClockCache;
+
+// Hands out one RetentionTable instance per table name, so jobs walking the same
+// tables over and over neither parse the names again nor keep duplicates around.
+// The pool is bounded, tables evicted from it are simply created again.
+public final class RetentionTablePool {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private final RetentionConfiguration retentions;
+    private final ClockCache<String, RetentionTable> tables;
+
+    public RetentionTablePool( RetentionConfiguration retentions ) {
+        this( retentions, DEFAULT_CAPACITY );
+    }
+
+    public RetentionTablePool( RetentionConfiguration retentions, int capacity ) {
+        this.retentions = retentions;
+        this.tables = new ClockCache<>( capacity );
+    }
+
+    public RetentionTable get( RetentionLevel level, long block ) {
+        String tableName = RetentionTable.tableName( level, block );
+        RetentionTable table = tables.get( tableName );
+        if ( table == null || !table.level().equals( level ) ) {
+            table = new RetentionTable( level, block, tableName );
+            tables.put( tableName, table );
+        }
+        return table;
+    }
+
+    // Same as new RetentionTable( tablename, retentions ), names that don't
+    // match the format or an unknown level throw an IllegalArgumentException.
+    public RetentionTable get( String tablename ) {
+        RetentionTable table = tables.get( tablename );
+        if ( table == null ) {
+            table = new RetentionTable( tablename, retentions );
+            RetentionTable canonical = tables.get( table.tableName() );
+            if ( canonical != null && canonical.equals( table ) ) {
+                table = canonical;
+            } else {
+                tables.put( table.tableName(), table );
+            }
+            tables.put( tablename, table );
+        }
+        return table;
+    }
+
+    public Optional<RetentionTable> find( String tablename ) {
+        if ( !RetentionTable.canCreateTable( tablename, retentions ) ) {
+            return Optional.empty();
+        }
+        return Optional.of( get( tablename ) );
+    }
+
+    public int size() {
+        return tables.size();
+    }
+
+    public void clear() {
+        tables.clear();
+    }
+}
@@ -0,0 +1,62 @@
+package io.bifroest.retentions;
+
+import java.util.Objects;
+import java.util.Optional;
+
+// A unit of maintenance work handed out by RetentionScheduler.
+public final class RetentionTask {
+    public enum Type {
+        // aggregate the table into the tables of the next level
+        ROLLUP,
+        // the table fell out of its level and can be removed
+        DROP
+    }
+
+    private final Type type;
+    private final RetentionTable table;
+    private final RetentionLevel target;
+
+    RetentionTask( Type type, RetentionTable table, RetentionLevel target ) {
+        this.type = type;
+        this.table = table;
+        this.target = target;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public RetentionTable table() {
+        return table;
+    }
+
+    // the level a ROLLUP writes to, empty for DROP
+    public Optional<RetentionLevel> target() {
+        return Optional.ofNullable( target );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash( type, table, target );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if ( this == obj ) {
+            return true;
+        } else if ( !( obj instanceof RetentionTask ) ) {
+            return false;
+        }
+        RetentionTask task = (RetentionTask)obj;
+        return type == task.type && table.equals( task.table ) && Objects.equals( target, task.target );
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder( type.name() ).append( ' ' ).append( table.tableName() );
+        if ( target != null ) {
+            result.append( " -> " ).append( target.name() );
+        }
+        return result.toString();
+    }
+}
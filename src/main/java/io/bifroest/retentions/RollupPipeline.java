@@ -0,0 +1,115 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import io.bifroest.retentions.aggregation.AggregationKernel;
+import io.bifroest.retentions.aggregation.AggregationKernels;
+import io.bifroest.commons.model.Interval;
+
+// Computes all levels downstream of a source level from one block of source
+// data in a single pass. Every completed bucket of a level is written to that
+// level's result and immediately fed into the next level, so intermediate
+// levels are never read back.
+public final class RollupPipeline {
+    private final RetentionConfiguration retentions;
+
+    public RollupPipeline( RetentionConfiguration retentions ) {
+        this.retentions = retentions;
+    }
+
+    public Map<RetentionLevel, MetricSet> rollup( String name, RetentionLevel sourceLevel, MetricSet block ) {
+        return rollup( name, sourceLevel, block.interval(), block.cursor() );
+    }
+
+    // Points have to be sorted by timestamp. The result contains one MetricSet per
+    // level reachable from sourceLevel, in chain order, each one covering the
+    // block interval aligned to the frequency of its level.
+    public Map<RetentionLevel, MetricSet> rollup( String name, RetentionLevel sourceLevel, Interval blockInterval, MetricCursor points ) {
+        MetricPolicy policy = retentions.findPolicyForMetric( name );
+        List<Stage> stages = new ArrayList<>();
+        RetentionLevelIterator levels = new RetentionLevelIterator( levelChain( sourceLevel ) );
+        while ( levels.isValid() && levels.targetLevel() != null ) {
+            stages.add( new Stage( name, levels.targetLevel(), blockInterval, policy ) );
+            levels.advance();
+        }
+
+        Map<RetentionLevel, MetricSet> result = new LinkedHashMap<>();
+        if ( stages.isEmpty() ) {
+            return result;
+        }
+        while ( points.next() ) {
+            if ( blockInterval.contains( points.timestamp() ) ) {
+                stages.get( 0 ).consume( points.timestamp(), points.value(), stages, 0 );
+            }
+        }
+        for ( int i = 0; i < stages.size(); i++ ) {
+            stages.get( i ).flush( stages, i );
+            result.put( stages.get( i ).level, stages.get( i ).output );
+        }
+        return result;
+    }
+
+    private List<RetentionLevel> levelChain( RetentionLevel sourceLevel ) {
+        List<RetentionLevel> chain = new ArrayList<>();
+        Optional<RetentionLevel> level = Optional.of( sourceLevel );
+        while ( level.isPresent() && !chain.contains( level.get() ) ) {
+            chain.add( level.get() );
+            level = retentions.getNextLevel( level.get() );
+        }
+        return chain;
+    }
+
+    private static final class Stage {
+        private final RetentionLevel level;
+        private final long frequency;
+        private final long outputStart;
+        private final MetricSet output;
+        private final AggregationKernel bucket;
+        private long bucketStart;
+        private boolean open;
+
+        Stage( String name, RetentionLevel level, Interval blockInterval, MetricPolicy policy ) {
+            this.level = level;
+            this.frequency = level.frequency();
+            Interval outputInterval = Aggregator.alignInterval( blockInterval, frequency );
+            this.outputStart = outputInterval.start();
+            this.output = new MetricSet( name, outputInterval, frequency );
+            this.bucket = AggregationKernels.forPolicy( policy, 1 );
+        }
+
+        void consume( long timestamp, double value, List<Stage> stages, int position ) {
+            long start = Aggregator.alignTo( timestamp, frequency );
+            if ( open && start != bucketStart ) {
+                if ( start < bucketStart ) {
+                    throw new IllegalArgumentException( String.format(
+                            "timestamp(%d) is older than the current bucket(%d) of level %s, points must be sorted",
+                            timestamp,
+                            bucketStart,
+                            level.name()
+                            ) );
+                }
+                flush( stages, position );
+            }
+            bucketStart = start;
+            open = true;
+            bucket.consume( 0, value );
+        }
+
+        void flush( List<Stage> stages, int position ) {
+            if ( !open || !bucket.hasValue( 0 ) ) {
+                return;
+            }
+            double value = bucket.result( 0 );
+            output.setValue( (int)( ( bucketStart - outputStart ) / frequency ), value );
+            bucket.reset( 0 );
+            open = false;
+            if ( position + 1 < stages.size() ) {
+                stages.get( position + 1 ).consume( bucketStart, value, stages, position + 1 );
+            }
+        }
+    }
+}
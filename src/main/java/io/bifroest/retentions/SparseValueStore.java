@@ -0,0 +1,141 @@
+package io.bifroest.retentions;
+
+import java.util.Arrays;
+
+// Sorted index/value arrays for series with few values. Switches to a dense
+// store once more than a quarter of the slots are filled, from there on the
+// dense array is smaller and faster.
+final class SparseValueStore extends ValueStore {
+    static final int DENSE_FILL_DIVISOR = 4;
+
+    private final int length;
+    private int[] indices;
+    private double[] values;
+    private int size;
+
+    SparseValueStore( int length, int expectedValues ) {
+        this.length = length;
+        int capacity = Math.max( 8, Math.min( expectedValues, length / DENSE_FILL_DIVISOR + 1 ) );
+        this.indices = new int[capacity];
+        this.values = new double[capacity];
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    private int find( int index ) {
+        // fast path for appending in order
+        if ( size > 0 && indices[size - 1] < index ) {
+            return -( size + 1 );
+        }
+        return Arrays.binarySearch( indices, 0, size, index );
+    }
+
+    @Override
+    double get( int index ) {
+        if ( index < 0 || index >= length ) {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        int position = find( index );
+        return position >= 0 ? values[position] : Double.NaN;
+    }
+
+    @Override
+    ValueStore set( int index, double value ) {
+        if ( index < 0 || index >= length ) {
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        int position = find( index );
+        if ( position >= 0 ) {
+            if ( Double.isNaN( value ) ) {
+                System.arraycopy( indices, position + 1, indices, position, size - position - 1 );
+                System.arraycopy( values, position + 1, values, position, size - position - 1 );
+                size--;
+            } else {
+                values[position] = value;
+            }
+            return this;
+        }
+        if ( Double.isNaN( value ) ) {
+            return this;
+        }
+        if ( size + 1 > length / DENSE_FILL_DIVISOR ) {
+            return toDense().set( index, value );
+        }
+        int insertAt = -( position + 1 );
+        if ( size == indices.length ) {
+            int capacity = Math.min( indices.length * 2, length / DENSE_FILL_DIVISOR + 1 );
+            indices = Arrays.copyOf( indices, capacity );
+            values = Arrays.copyOf( values, capacity );
+        }
+        System.arraycopy( indices, insertAt, indices, insertAt + 1, size - insertAt );
+        System.arraycopy( values, insertAt, values, insertAt + 1, size - insertAt );
+        indices[insertAt] = index;
+        values[insertAt] = value;
+        size++;
+        return this;
+    }
+
+    @Override
+    int count() {
+        return size;
+    }
+
+    @Override
+    int nextIndex( int from ) {
+        int position = Arrays.binarySearch( indices, 0, size, from );
+        if ( position < 0 ) {
+            position = -( position + 1 );
+        }
+        return position < size ? indices[position] : -1;
+    }
+
+    @Override
+    void forEach( long start, long step, MetricVisitor visitor ) {
+        for ( int i = 0; i < size; i++ ) {
+            visitor.visit( start + indices[i] * step, values[i] );
+        }
+    }
+
+    @Override
+    ValueStore slice( int from, int to ) {
+        int first = find( from );
+        if ( first < 0 ) {
+            first = -( first + 1 );
+        }
+        SparseValueStore result = new SparseValueStore( to - from, 0 );
+        ValueStore current = result;
+        for ( int i = first; i < size && indices[i] < to; i++ ) {
+            current = current.set( indices[i] - from, values[i] );
+        }
+        return current;
+    }
+
+    @Override
+    void copyTo( int from, int to, double[] target, int targetOffset, boolean skipEmpty ) {
+        if ( !skipEmpty ) {
+            Arrays.fill( target, targetOffset, targetOffset + to - from, Double.NaN );
+        }
+        for ( int i = 0; i < size; i++ ) {
+            if ( indices[i] >= from && indices[i] < to ) {
+                target[targetOffset + indices[i] - from] = values[i];
+            }
+        }
+    }
+
+    @Override
+    DenseValueStore toDense() {
+        DenseValueStore dense = new DenseValueStore( length );
+        for ( int i = 0; i < size; i++ ) {
+            dense.set( indices[i], values[i] );
+        }
+        return dense;
+    }
+
+    @Override
+    boolean isSparse() {
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+package io.bifroest.retentions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import io.bifroest.retentions.aggregation.AggregationKernel;
+import io.bifroest.retentions.aggregation.AggregationKernels;
+import io.bifroest.commons.model.Metric;
+
+// Aggregates points as they arrive. For every series, there is an open bucket
+// per level of its level chain and per bucket start. The watermark trails the
+// newest timestamp seen by allowedLateness seconds; once it passes the end of
+// a bucket, the bucket is handed to the listener and forgotten. Points for
+// buckets that have been emitted already are dropped.
+//
+// Memory is bounded by the number of open buckets, not by the number of points.
+// Not thread safe, use one instance per ingest thread.
+public final class StreamingAggregator {
+
+    public interface BucketListener {
+        void bucketCompleted( String name, RetentionLevel level, long timestamp, double value );
+    }
+
+    private final RetentionConfiguration retentions;
+    private final long allowedLateness;
+    private final BucketListener listener;
+
+    private final Map<String, Series> series;
+    private final PriorityQueue<OpenBucket> byEnd;
+
+    private long watermark;
+    private long droppedLatePoints;
+    private long droppedUnclassifiedPoints;
+
+    public StreamingAggregator( RetentionConfiguration retentions, long allowedLateness, BucketListener listener ) {
+        if ( allowedLateness < 0 ) {
+            throw new IllegalArgumentException( "allowedLateness must not be negative, got " + allowedLateness );
+        }
+        this.retentions = retentions;
+        this.allowedLateness = allowedLateness;
+        this.listener = listener;
+        this.series = new HashMap<>();
+        this.byEnd = new PriorityQueue<>( ( a, b ) -> Long.compare( a.end, b.end ) );
+        this.watermark = Long.MIN_VALUE;
+    }
+
+    public boolean consume( Metric metric ) {
+        return consume( metric.name(), metric.timestamp(), metric.value() );
+    }
+
+    // Returns false if the point was dropped, either because it is too late or
+    // because the metric has no access level.
+    public boolean consume( String name, long timestamp, double value ) {
+        Series current = series.get( name );
+        if ( current == null ) {
+            MetricPolicy policy = retentions.findPolicyForMetric( name );
+            if ( policy.levelChain().isEmpty() ) {
+                droppedUnclassifiedPoints++;
+                return false;
+            }
+            current = new Series( name, policy );
+        }
+
+        // all levels accept a point or none does, so the levels stay consistent
+        for ( RetentionLevel level : current.levels ) {
+            if ( Aggregator.alignTo( timestamp, level.frequency() ) + level.frequency() <= watermark ) {
+                droppedLatePoints++;
+                return false;
+            }
+        }
+
+        for ( int i = 0; i < current.levels.length; i++ ) {
+            current.bucketFor( i, timestamp ).kernel.consume( 0, value );
+        }
+        series.put( name, current );
+
+        if ( timestamp - allowedLateness > watermark ) {
+            advanceWatermark( timestamp - allowedLateness );
+        }
+        return true;
+    }
+
+    // Emits every bucket ending at or before the watermark. Usually driven by
+    // consume, but can be called with wall clock time for series that went quiet.
+    public void advanceWatermark( long newWatermark ) {
+        if ( newWatermark <= watermark ) {
+            return;
+        }
+        watermark = newWatermark;
+        while ( !byEnd.isEmpty() && byEnd.peek().end <= watermark ) {
+            emit( byEnd.poll() );
+        }
+    }
+
+    // Emits all open buckets, complete or not.
+    public void flush() {
+        while ( !byEnd.isEmpty() ) {
+            emit( byEnd.poll() );
+        }
+    }
+
+    private void emit( OpenBucket bucket ) {
+        Series owner = bucket.series;
+        owner.buckets[bucket.level].remove( bucket );
+        if ( --owner.openBuckets == 0 ) {
+            series.remove( owner.name );
+        }
+        listener.bucketCompleted( owner.name, owner.levels[bucket.level], bucket.start, bucket.kernel.result( 0 ) );
+    }
+
+    public long watermark() {
+        return watermark;
+    }
+
+    public int openBuckets() {
+        return byEnd.size();
+    }
+
+    public int openSeries() {
+        return series.size();
+    }
+
+    public long droppedLatePoints() {
+        return droppedLatePoints;
+    }
+
+    public long droppedUnclassifiedPoints() {
+        return droppedUnclassifiedPoints;
+    }
+
+    private final class Series {
+        private final String name;
+        private final MetricPolicy policy;
+        private final RetentionLevel[] levels;
+        private final List<OpenBucket>[] buckets;
+        private int openBuckets;
+
+        @SuppressWarnings( "unchecked" )
+        Series( String name, MetricPolicy policy ) {
+            this.name = name;
+            this.policy = policy;
+            this.levels = policy.levelChain().toArray( new RetentionLevel[0] );
+            this.buckets = new List[levels.length];
+            for ( int i = 0; i < levels.length; i++ ) {
+                // there are rarely more than one or two open buckets per level
+                buckets[i] = new ArrayList<>( 2 );
+            }
+        }
+
+        OpenBucket bucketFor( int level, long timestamp ) {
+            long start = Aggregator.alignTo( timestamp, levels[level].frequency() );
+            for ( OpenBucket bucket : buckets[level] ) {
+                if ( bucket.start == start ) {
+                    return bucket;
+                }
+            }
+            OpenBucket bucket = new OpenBucket( this, level, start, start + levels[level].frequency(), AggregationKernels.forPolicy( policy, 1 ) );
+            buckets[level].add( bucket );
+            byEnd.add( bucket );
+            openBuckets++;
+            return bucket;
+        }
+    }
+
+    private static final class OpenBucket {
+        private final Series series;
+        private final int level;
+        private final long start;
+        private final long end;
+        private final AggregationKernel kernel;
+
+        OpenBucket( Series series, int level, long start, long end, AggregationKernel kernel ) {
+            this.series = series;
+            this.level = level;
+            this.start = start;
+            this.end = end;
+            this.kernel = kernel;
+        }
+    }
+}
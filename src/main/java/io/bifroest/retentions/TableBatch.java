@@ -0,0 +1,70 @@
+package io.bifroest.retentions;
+
+import java.util.Arrays;
+
+// The points of one RetentionTable in columns, in the order they were added.
+// The arrays are the storage of the batch and hold size() valid entries.
+public final class TableBatch {
+    private final RetentionTable table;
+    private String[] names;
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    TableBatch( RetentionTable table, int capacity ) {
+        this.table = table;
+        this.names = new String[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    void add( String name, long timestamp, double value ) {
+        if ( size == names.length ) {
+            int capacity = Math.max( 8, size * 2 );
+            names = Arrays.copyOf( names, capacity );
+            timestamps = Arrays.copyOf( timestamps, capacity );
+            values = Arrays.copyOf( values, capacity );
+        }
+        names[size] = name;
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    public RetentionTable table() {
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name( int index ) {
+        return names[index];
+    }
+
+    public long timestamp( int index ) {
+        return timestamps[index];
+    }
+
+    public double value( int index ) {
+        return values[index];
+    }
+
+    public String[] names() {
+        return names;
+    }
+
+    public long[] timestamps() {
+        return timestamps;
+    }
+
+    public double[] values() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "TableBatch[" + table.tableName() + ", " + size + " points]";
+    }
+}
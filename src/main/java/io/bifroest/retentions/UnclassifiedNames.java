@@ -0,0 +1,60 @@
+package io.bifroest.retentions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Counts lookups for names without an access level. Junk names show up on every
+// write, so instead of one line per lookup this logs at most one summary per
+// interval, with the number of lookups since the last one and an example name.
+public final class UnclassifiedNames {
+    private static final Logger log = LogManager.getLogger();
+
+    private static final UnclassifiedNames instance = new UnclassifiedNames( TimeUnit.MINUTES.toNanos( 1 ), System::nanoTime );
+
+    private final long intervalNanos;
+    private final LongSupplier clock;
+    private final LongAdder total;
+    private final LongAdder sinceReport;
+    private final AtomicLong nextReport;
+
+    UnclassifiedNames( long intervalNanos, LongSupplier clock ) {
+        this.intervalNanos = intervalNanos;
+        this.clock = clock;
+        this.total = new LongAdder();
+        this.sinceReport = new LongAdder();
+        // the first miss is logged right away
+        this.nextReport = new AtomicLong( clock.getAsLong() );
+    }
+
+    public static UnclassifiedNames instance() {
+        return instance;
+    }
+
+    static void report( String name ) {
+        instance.add( name );
+    }
+
+    // Returns whether this lookup was logged.
+    boolean add( String name ) {
+        total.increment();
+        sinceReport.increment();
+        long now = clock.getAsLong();
+        long due = nextReport.get();
+        if ( now - due < 0 || !nextReport.compareAndSet( due, now + intervalNanos ) ) {
+            return false;
+        }
+        log.warn( "No AccessLevel found for {} lookups in the last {}s, e.g. {}",
+                sinceReport.sumThenReset(), TimeUnit.NANOSECONDS.toSeconds( intervalNanos ), name );
+        return true;
+    }
+
+    // All lookups without an access level since startup.
+    public long total() {
+        return total.sum();
+    }
+}
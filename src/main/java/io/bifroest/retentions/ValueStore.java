@@ -0,0 +1,95 @@
+package io.bifroest.retentions;
+
+// Storage behind a MetricSet. Empty slots read as NaN, and writing NaN
+// empties a slot.
+abstract class ValueStore {
+
+    abstract int length();
+
+    abstract double get( int index );
+
+    // Returns the store to use from now on, which is usually this one. A
+    // store may switch to another representation once it fills up.
+    abstract ValueStore set( int index, double value );
+
+    // number of slots that are not NaN
+    abstract int count();
+
+    // first index >= from that holds a value, or -1
+    abstract int nextIndex( int from );
+
+    abstract void forEach( long start, long step, MetricVisitor visitor );
+
+    abstract DenseValueStore toDense();
+
+    // The store for the slots from (inclusive) to to (exclusive). Dense stores share
+    // their array with the slice, other stores copy.
+    ValueStore slice( int from, int to ) {
+        double[] copy = new double[to - from];
+        copyTo( from, to, copy, 0, false );
+        return new DenseValueStore( copy );
+    }
+
+    // Copies the slots from (inclusive) to to (exclusive) into target. With skipEmpty
+    // the slots of target are only overwritten by values, not by NaN.
+    void copyTo( int from, int to, double[] target, int targetOffset, boolean skipEmpty ) {
+        for ( int i = from; i < to; i++ ) {
+            double value = get( i );
+            if ( !skipEmpty || !Double.isNaN( value ) ) {
+                target[targetOffset + i - from] = value;
+            }
+        }
+    }
+
+    final double[] toArray() {
+        double[] result = new double[length()];
+        copyTo( 0, result.length, result, 0, false );
+        return result;
+    }
+
+    // true if the store shares its storage with another store
+    boolean isView() {
+        return false;
+    }
+
+    boolean isSparse() {
+        return false;
+    }
+
+    boolean isOffHeap() {
+        return false;
+    }
+
+    // Reference counting only matters for off heap stores, heap stores are left to
+    // the garbage collector.
+    void retain() {
+    }
+
+    // true if this released the last reference
+    boolean release() {
+        return false;
+    }
+
+    final int valuesHashCode() {
+        // same as Arrays.hashCode( double[] )
+        int hash = 1;
+        for ( int i = 0; i < length(); i++ ) {
+            long bits = Double.doubleToLongBits( get( i ) );
+            hash = 31 * hash + (int)( bits ^ ( bits >>> 32 ) );
+        }
+        return hash;
+    }
+
+    final boolean valuesEqual( ValueStore other ) {
+        // same as Arrays.equals( double[], double[] )
+        if ( length() != other.length() ) {
+            return false;
+        }
+        for ( int i = 0; i < length(); i++ ) {
+            if ( Double.doubleToLongBits( get( i ) ) != Double.doubleToLongBits( other.get( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
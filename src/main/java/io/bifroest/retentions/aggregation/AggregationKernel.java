@@ -0,0 +1,45 @@
+package io.bifroest.retentions.aggregation;
+
+import java.util.Arrays;
+
+// Aggregates values into a fixed number of slots, keeping all state in flat
+// primitive arrays instead of one ValueAggregation object per slot.
+public abstract class AggregationKernel {
+    protected final long[] counts;
+    protected final double[] accumulators;
+
+    protected AggregationKernel( int size ) {
+        this.counts = new long[size];
+        this.accumulators = new double[size];
+    }
+
+    public abstract String functionName();
+
+    public abstract void consume( int index, double value );
+
+    protected double finish( int index ) {
+        return accumulators[index];
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    public boolean hasValue( int index ) {
+        return counts[index] != 0;
+    }
+
+    public double result( int index ) {
+        return counts[index] == 0 ? Double.NaN : finish( index );
+    }
+
+    public void reset( int index ) {
+        counts[index] = 0;
+        accumulators[index] = 0;
+    }
+
+    public void reset() {
+        Arrays.fill( counts, 0 );
+        Arrays.fill( accumulators, 0 );
+    }
+}
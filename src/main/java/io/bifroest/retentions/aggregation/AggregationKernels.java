@@ -0,0 +1,134 @@
+package io.bifroest.retentions.aggregation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import io.bifroest.retentions.MetricPolicy;
+
+// Kernels for the aggregation functions shipped with bifroest commons.
+// Functions from other ValueAggregationFactory implementations don't have a
+// kernel and need to go through ValueAggregation.
+public final class AggregationKernels {
+    private static final Map<String, IntFunction<AggregationKernel>> kernels;
+
+    static {
+        kernels = new HashMap<>();
+        kernels.put( "average", AverageKernel::new );
+        kernels.put( "min", MinKernel::new );
+        kernels.put( "max", MaxKernel::new );
+        kernels.put( "last", LastKernel::new );
+        kernels.put( "sum", SumKernel::new );
+    }
+
+    private AggregationKernels() {
+        // Do not instantiate.
+    }
+
+    public static boolean hasKernel( String functionName ) {
+        return kernels.containsKey( functionName );
+    }
+
+    // returns null if there is no kernel for the function
+    public static AggregationKernel create( String functionName, int size ) {
+        IntFunction<AggregationKernel> constructor = kernels.get( functionName );
+        return constructor == null ? null : constructor.apply( size );
+    }
+
+    // falls back to the policy's ValueAggregationFactory if there is no kernel for the function
+    public static AggregationKernel forPolicy( MetricPolicy policy, int size ) {
+        AggregationKernel kernel = create( policy.functionName(), size );
+        if ( kernel == null ) {
+            kernel = new ValueAggregationKernel( policy.aggregationFactory(), size );
+        }
+        return kernel;
+    }
+
+    private static final class AverageKernel extends AggregationKernel {
+        AverageKernel( int size ) {
+            super( size );
+        }
+
+        @Override
+        public String functionName() {
+            return "average";
+        }
+
+        @Override
+        public void consume( int index, double value ) {
+            accumulators[index] += value;
+            counts[index]++;
+        }
+
+        @Override
+        protected double finish( int index ) {
+            return accumulators[index] / counts[index];
+        }
+    }
+
+    private static final class MinKernel extends AggregationKernel {
+        MinKernel( int size ) {
+            super( size );
+        }
+
+        @Override
+        public String functionName() {
+            return "min";
+        }
+
+        @Override
+        public void consume( int index, double value ) {
+            accumulators[index] = counts[index]++ == 0 ? value : Math.min( accumulators[index], value );
+        }
+    }
+
+    private static final class MaxKernel extends AggregationKernel {
+        MaxKernel( int size ) {
+            super( size );
+        }
+
+        @Override
+        public String functionName() {
+            return "max";
+        }
+
+        @Override
+        public void consume( int index, double value ) {
+            accumulators[index] = counts[index]++ == 0 ? value : Math.max( accumulators[index], value );
+        }
+    }
+
+    private static final class LastKernel extends AggregationKernel {
+        LastKernel( int size ) {
+            super( size );
+        }
+
+        @Override
+        public String functionName() {
+            return "last";
+        }
+
+        @Override
+        public void consume( int index, double value ) {
+            accumulators[index] = value;
+            counts[index]++;
+        }
+    }
+
+    private static final class SumKernel extends AggregationKernel {
+        SumKernel( int size ) {
+            super( size );
+        }
+
+        @Override
+        public String functionName() {
+            return "sum";
+        }
+
+        @Override
+        public void consume( int index, double value ) {
+            accumulators[index] += value;
+            counts[index]++;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.bifroest.retentions.aggregation;
+
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+import io.bifroest.commons.statistics.aggregation.ValueAggregationFactory;
+
+// Fallback for functions without a primitive kernel. A ValueAggregation is
+// only created once a slot receives its first value.
+final class ValueAggregationKernel extends AggregationKernel {
+    private final ValueAggregationFactory factory;
+    private final ValueAggregation[] aggregations;
+
+    ValueAggregationKernel( ValueAggregationFactory factory, int size ) {
+        super( size );
+        this.factory = factory;
+        this.aggregations = new ValueAggregation[size];
+    }
+
+    @Override
+    public String functionName() {
+        return factory.getFunctionName().toLowerCase();
+    }
+
+    @Override
+    public void consume( int index, double value ) {
+        if ( aggregations[index] == null ) {
+            aggregations[index] = factory.createAggregation();
+        }
+        aggregations[index].consumeValue( value );
+        counts[index]++;
+    }
+
+    @Override
+    protected double finish( int index ) {
+        return aggregations[index].getAggregatedValue();
+    }
+
+    @Override
+    public void reset( int index ) {
+        super.reset( index );
+        aggregations[index] = null;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        for ( int i = 0; i < aggregations.length; i++ ) {
+            aggregations[i] = null;
+        }
+    }
+}
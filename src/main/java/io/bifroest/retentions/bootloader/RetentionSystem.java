@@ -1,7 +1,13 @@
 package io.bifroest.retentions.bootloader;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -10,10 +16,12 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.kohsuke.MetaInfServices;
 
+import io.bifroest.retentions.ClassificationIndex;
 import io.bifroest.retentions.MutableRetentionConfiguration;
-import io.bifroest.retentions.RetentionConfiguration;
+import io.bifroest.retentions.RetentionConfigurationSnapshot;
 import io.bifroest.retentions.RetentionLevel;
 import io.bifroest.retentions.RetentionTable;
+import io.bifroest.retentions.cache.CacheConfiguration;
 import io.bifroest.commons.SystemIdentifiers;
 import io.bifroest.commons.boot.interfaces.Subsystem;
 import io.bifroest.commons.configuration.ConfigurationObserver;
@@ -31,6 +39,17 @@ public class RetentionSystem<E extends EnvironmentWithJSONConfiguration & Enviro
 
     private static final UnitParser parser = new TimeUnitParser( SI_PREFIX.ONE, TIME_UNIT.SECOND );
 
+    private static final String DEFAULT_INDEX_REBUILD_INTERVAL = "10m";
+
+    // only set if the configuration asks for a classification index
+    private Path indexFile;
+    private long indexRebuildInterval;
+    private volatile ClassificationIndex index;
+    private ScheduledExecutorService indexWriter;
+    // what the last write covered, so unchanged indexes are not written again
+    private ClassificationIndex writtenIndex;
+    private int writtenRecordedSize;
+
     @Override
     public String getSystemIdentifier() {
         return SystemIdentifiers.RETENTION;
@@ -48,14 +67,23 @@ public class RetentionSystem<E extends EnvironmentWithJSONConfiguration & Enviro
 
     @Override
     public void boot( final E environment ) throws Exception {
-        environment.setRetentions( createRetentions( environment.getConfiguration() ) );
+        final RetentionConfigurationSnapshot initial = createRetentions( environment.getConfiguration(), null );
+        configureIndex( environment.getConfiguration().getJSONObject( "retention" ), initial );
+        environment.setRetentions( initial );
 
         environment.getConfigurationLoader().subscribe( new ConfigurationObserver() {
+            // new configurations are diffed against this one, so cached lookups
+            // the changes cannot affect survive the reload
+            private RetentionConfigurationSnapshot current = initial;
 
             @Override
-            public void handleNewConfig( JSONObject config ) {
+            public synchronized void handleNewConfig( JSONObject config ) {
                 try {
-                    environment.setRetentions( createRetentions( config ) );
+                    RetentionConfigurationSnapshot next = createRetentions( config, current );
+                    configureIndex( config.getJSONObject( "retention" ), next );
+                    current = next;
+                    log.debug( "Reloaded retentions, {}", current.changes() );
+                    environment.setRetentions( current );
                 } catch( InvalidConfigurationException e ) {
                     log.error( e );
                 }
@@ -65,8 +93,91 @@ public class RetentionSystem<E extends EnvironmentWithJSONConfiguration & Enviro
     }
 
     @Override
-    public void shutdown( E environment ) {
-        // Nothing to shutdown
+    public synchronized void shutdown( E environment ) {
+        stopIndex();
+    }
+
+    // Configured by the optional "index" object in the retention configuration:
+    //   "index": { "path": "/var/lib/bifroest/classifications", "rebuildInterval": "10m" }
+    // Reloads apply changes: a new path writes what was recorded so far to the old
+    // file and continues with the new one, removing the object stops the index.
+    private synchronized void configureIndex( JSONObject retention, RetentionConfigurationSnapshot retentions ) throws InvalidConfigurationException {
+        JSONObject indexConfig = retention.optJSONObject( "index" );
+        if ( indexConfig == null ) {
+            stopIndex();
+            return;
+        }
+        if ( !indexConfig.has( "path" ) ) {
+            throw new InvalidConfigurationException( "Classification index needs a path" );
+        }
+        long rebuildInterval = parser.parse( indexConfig.optString( "rebuildInterval", DEFAULT_INDEX_REBUILD_INTERVAL ) ).longValue();
+        if ( rebuildInterval <= 0 ) {
+            throw new InvalidConfigurationException( "Classification index rebuildInterval must be positive" );
+        }
+        Path file = Paths.get( indexConfig.getString( "path" ) );
+
+        if ( !file.equals( indexFile ) || rebuildInterval != indexRebuildInterval ) {
+            stopIndex();
+            indexFile = file;
+            indexRebuildInterval = rebuildInterval;
+            indexWriter = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, "ClassificationIndexWriter" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            indexWriter.scheduleWithFixedDelay( this::writeIndex, rebuildInterval, rebuildInterval, TimeUnit.SECONDS );
+            log.info( "Classification index at {}, written every {}s", file, rebuildInterval );
+        }
+        useIndex( retentions );
+    }
+
+    // Writes the current index one last time and forgets it.
+    private synchronized void stopIndex() {
+        if ( indexWriter == null ) {
+            return;
+        }
+        indexWriter.shutdownNow();
+        writeIndex();
+        indexWriter = null;
+        indexFile = null;
+        indexRebuildInterval = 0;
+        index = null;
+        writtenIndex = null;
+        writtenRecordedSize = 0;
+    }
+
+    // Keeps the current index as long as the patterns stay the same, otherwise
+    // opens the file again, which may have been written for the new patterns.
+    private synchronized void useIndex( RetentionConfigurationSnapshot retentions ) {
+        if ( indexFile == null ) {
+            return;
+        }
+        ClassificationIndex current = index;
+        if ( current == null || current.fingerprint() != retentions.fingerprint() ) {
+            try {
+                current = ClassificationIndex.open( indexFile, retentions.fingerprint() );
+            } catch ( IOException e ) {
+                log.warn( "Cannot read classification index " + indexFile + ", starting over", e );
+                current = ClassificationIndex.empty( retentions.fingerprint() );
+            }
+            index = current;
+        }
+        retentions.useIndex( current );
+    }
+
+    private synchronized void writeIndex() {
+        ClassificationIndex current = index;
+        int recordedSize = current == null ? 0 : current.recordedSize();
+        if ( recordedSize == 0 || ( current == writtenIndex && recordedSize == writtenRecordedSize ) ) {
+            return;
+        }
+        try {
+            current.writeTo( indexFile );
+            writtenIndex = current;
+            writtenRecordedSize = recordedSize;
+        } catch ( IOException | RuntimeException e ) {
+            log.warn( "Cannot write classification index " + indexFile, e );
+        }
     }
 
     private static void checkTableNamePart( String partDesc, String tableNamePart, boolean force ) throws InvalidConfigurationException {
@@ -97,10 +208,12 @@ public class RetentionSystem<E extends EnvironmentWithJSONConfiguration & Enviro
         }
     }
 
-    private static RetentionConfiguration createRetentions( JSONObject config ) throws InvalidConfigurationException {
+    private static RetentionConfigurationSnapshot createRetentions( JSONObject config, RetentionConfigurationSnapshot previous ) throws InvalidConfigurationException {
         JSONObject retention = config.getJSONObject( "retention" );
+        CacheConfiguration cacheConfiguration = CacheConfiguration.fromJSON( retention );
         
         MutableRetentionConfiguration retentions = new MutableRetentionConfiguration();
+        retentions.useSegmentTrie( retention.optBoolean( "segmentTrie", false ) );
 
         JSONObject levels = retention.getJSONObject( "levels" );
 
@@ -143,7 +256,8 @@ public class RetentionSystem<E extends EnvironmentWithJSONConfiguration & Enviro
 
         }
 
-        return retentions;
+        MutableRetentionConfiguration.configureCaches( cacheConfiguration );
+        return retentions.snapshot( previous );
     }
 
 }
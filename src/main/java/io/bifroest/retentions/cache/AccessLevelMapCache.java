@@ -1,25 +1,33 @@
 package io.bifroest.retentions.cache;
 
-import java.util.Optional;
-
-import io.bifroest.retentions.MutableRetentionConfiguration;
+import io.bifroest.retentions.CacheableRetentionConfiguration;
+import io.bifroest.retentions.ConfigurationDiff;
 import io.bifroest.commons.statistics.cache.CacheTracker;
 
 
-public class AccessLevelMapCache extends ThreadLocalMapCache {
+public class AccessLevelMapCache extends MapCache<String> {
     public AccessLevelMapCache(CacheTracker tracker, String name) {
         super(tracker, name);
     }
 
+    public AccessLevelMapCache(CacheTracker tracker, String name, ClassificationCache<Entry<String>> cache) {
+        super(tracker, name, cache);
+    }
+
+
+    @Override
+    protected long match( String metricName, CacheableRetentionConfiguration config ){
+        return config.matchAccessLevel( metricName );
+    }
+
+    @Override
+    protected String valueFor( String metricName, long match, CacheableRetentionConfiguration config ){
+        return config.accessLevelName( (int)match );
+    }
 
     @Override
-    protected String findLevelWithoutCache( String metricName, MutableRetentionConfiguration newConfig ){
-        Optional<String> accessLevelName = newConfig.findAccessLevelForMetricWithoutCache(metricName); 
-        if( accessLevelName.isPresent() ){
-            addToCache( metricName, accessLevelName.get() );
-            return accessLevelName.get();
-        }
-        return null;
+    protected boolean keeps( String accessLevelName, long match, ConfigurationDiff diff ){
+        return diff.keepsAccessLevelMatch( (int)match );
     }
 
 }
@@ -3,20 +3,33 @@ package io.bifroest.retentions.cache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import io.bifroest.retentions.MutableRetentionConfiguration;
+import io.bifroest.retentions.CacheableRetentionConfiguration;
+import io.bifroest.retentions.ConfigurationDiff;
 import io.bifroest.commons.statistics.cache.CacheTracker;
 
-public class AggregationFunctionMapCache extends ThreadLocalMapCache {
+public class AggregationFunctionMapCache extends MapCache<String> {
     public AggregationFunctionMapCache(CacheTracker tracker, String name) {
         super(tracker, name);
     }
 
+    public AggregationFunctionMapCache(CacheTracker tracker, String name, ClassificationCache<Entry<String>> cache) {
+        super(tracker, name, cache);
+    }
+
     private static final Logger log = LogManager.getLogger();
 
     @Override
-    protected String findLevelWithoutCache( String metricName, MutableRetentionConfiguration newConfig ){
-        String functionName = newConfig.findAggregationNameThroughATonOfRegexes( metricName );
-        addToCache( metricName, functionName );
-        return log.exit( functionName );
+    protected long match( String metricName, CacheableRetentionConfiguration config ){
+        return config.matchFunction( metricName );
+    }
+
+    @Override
+    protected String valueFor( String metricName, long match, CacheableRetentionConfiguration config ){
+        return log.exit( config.aggregationName( (int)match, metricName ) );
+    }
+
+    @Override
+    protected boolean keeps( String functionName, long match, ConfigurationDiff diff ){
+        return diff.keepsFunctionMatch( (int)match );
     }
 }
@@ -0,0 +1,85 @@
+package io.bifroest.retentions.cache;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import org.json.JSONObject;
+
+import io.bifroest.commons.configuration.InvalidConfigurationException;
+
+// Parsed from the optional "cache" object inside the retention configuration:
+//   "cache": { "shared": true, "capacity": 500000, "eviction": "clock" }
+// Without it, every thread keeps its own LRU cache of 50 entries.
+public final class CacheConfiguration {
+    public static final CacheConfiguration DEFAULT = new CacheConfiguration( false, 50, EvictionPolicy.LRU );
+
+    private final boolean shared;
+    private final int capacity;
+    private final EvictionPolicy eviction;
+
+    public CacheConfiguration( boolean shared, int capacity, EvictionPolicy eviction ) {
+        if ( capacity <= 0 ) {
+            throw new IllegalArgumentException( "capacity must be positive, got " + capacity );
+        }
+        this.shared = shared;
+        this.capacity = capacity;
+        this.eviction = Objects.requireNonNull( eviction );
+    }
+
+    public static CacheConfiguration fromJSON( JSONObject retention ) throws InvalidConfigurationException {
+        if ( !retention.has( "cache" ) ) {
+            return DEFAULT;
+        }
+        JSONObject cache = retention.getJSONObject( "cache" );
+        boolean shared = cache.optBoolean( "shared", DEFAULT.shared );
+        int capacity = cache.optInt( "capacity", DEFAULT.capacity );
+        if ( capacity <= 0 ) {
+            throw new InvalidConfigurationException( "Cache capacity must be positive, got " + capacity );
+        }
+        String evictionName = cache.optString( "eviction", DEFAULT.eviction.name() );
+        EvictionPolicy eviction;
+        try {
+            eviction = EvictionPolicy.valueOf( evictionName.toUpperCase( Locale.ROOT ) );
+        } catch ( IllegalArgumentException e ) {
+            throw new InvalidConfigurationException( "Unknown cache eviction policy " + evictionName );
+        }
+        return new CacheConfiguration( shared, capacity, eviction );
+    }
+
+    public boolean shared() {
+        return shared;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public EvictionPolicy eviction() {
+        return eviction;
+    }
+
+    public <V> ClassificationCache<V> createCache() {
+        return shared ? eviction.<V> createShared( capacity ) : eviction.<V> createLocal( capacity );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash( shared, capacity, eviction );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if ( this == obj ) {
+            return true;
+        } else if ( !( obj instanceof CacheConfiguration ) ) {
+            return false;
+        }
+        CacheConfiguration other = (CacheConfiguration)obj;
+        return shared == other.shared && capacity == other.capacity && eviction == other.eviction;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheConfiguration[shared=" + shared + ";capacity=" + capacity + ";eviction=" + eviction + "]";
+    }
+}
@@ -0,0 +1,9 @@
+package io.bifroest.retentions.cache;
+
+public interface ClassificationCache<V> {
+    V get( String metricName );
+    void put( String metricName, V value );
+    void clear();
+    int size();
+    int maxSize();
+}
@@ -0,0 +1,39 @@
+package io.bifroest.retentions.cache;
+
+import io.bifroest.retentions.util.ClockCache;
+
+// Thread safe cache using CLOCK (second chance) eviction, see ClockCache.
+// Hits never take a lock, inserts only happen after a classification miss,
+// and that means we just ran the regexes.
+public final class ClockClassificationCache<V> implements ClassificationCache<V> {
+    private final ClockCache<String, V> cache;
+
+    public ClockClassificationCache( int capacity ) {
+        this.cache = new ClockCache<>( capacity );
+    }
+
+    @Override
+    public V get( String metricName ) {
+        return cache.get( metricName );
+    }
+
+    @Override
+    public void put( String metricName, V value ) {
+        cache.put( metricName, value );
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return cache.capacity();
+    }
+}
@@ -0,0 +1,31 @@
+package io.bifroest.retentions.cache;
+
+public enum EvictionPolicy {
+    LRU {
+        @Override
+        public <V> ClassificationCache<V> createLocal( int capacity ) {
+            return new LRUClassificationCache<>( capacity );
+        }
+
+        @Override
+        public <V> ClassificationCache<V> createShared( int capacity ) {
+            return new StripedLRUClassificationCache<>( capacity );
+        }
+    },
+    CLOCK {
+        @Override
+        public <V> ClassificationCache<V> createLocal( int capacity ) {
+            return new ClockClassificationCache<>( capacity );
+        }
+
+        @Override
+        public <V> ClassificationCache<V> createShared( int capacity ) {
+            return new ClockClassificationCache<>( capacity );
+        }
+    };
+
+    // for a cache only ever touched by a single thread
+    public abstract <V> ClassificationCache<V> createLocal( int capacity );
+
+    public abstract <V> ClassificationCache<V> createShared( int capacity );
+}
@@ -0,0 +1,37 @@
+package io.bifroest.retentions.cache;
+
+import org.apache.commons.collections4.map.LRUMap;
+
+// Not thread safe, meant to live in a ThreadLocal.
+public final class LRUClassificationCache<V> implements ClassificationCache<V> {
+    private final LRUMap<String, V> cache;
+
+    public LRUClassificationCache( int capacity ) {
+        this.cache = new LRUMap<>( capacity );
+    }
+
+    @Override
+    public V get( String metricName ) {
+        return cache.get( metricName );
+    }
+
+    @Override
+    public void put( String metricName, V value ) {
+        cache.put( metricName, value );
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return cache.maxSize();
+    }
+}
@@ -0,0 +1,147 @@
+package io.bifroest.retentions.cache;
+
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.retentions.CacheableRetentionConfiguration;
+import io.bifroest.retentions.ConfigurationDiff;
+import io.bifroest.commons.statistics.cache.CacheTracker;
+
+public abstract class MapCache<V> {
+    
+    private static final Logger log = LogManager.getLogger();
+    
+    private final String name;
+    private final CacheTracker tracker;
+    private final ClassificationCache<Entry<V>> cache;
+    
+    // epoch of the newest configuration this cache has seen, only moves forward
+    private volatile long epoch;
+    // stores hold the read lock, so advance() never runs between their epoch check and the put
+    private final ReadWriteLock epochLock = new ReentrantReadWriteLock();
+    
+    public MapCache( CacheTracker tracker, String name ){
+        this( tracker, name, new LRUClassificationCache<Entry<V>>( 50 ) );
+    }
+
+    public MapCache( CacheTracker tracker, String name, ClassificationCache<Entry<V>> cache ){
+        this.name = name;
+        this.tracker = Objects.requireNonNull( tracker );
+        this.epoch = -1;
+        this.cache = Objects.requireNonNull( cache );
+    }
+    
+    public String name(){
+        return this.name;
+    }
+
+    public int maxSize(){
+        return cache.maxSize();
+    }
+    
+    public V get( String  metricName, CacheableRetentionConfiguration currentRetentionConfiguration ){
+        long currentEpoch = currentRetentionConfiguration.epoch();
+        if( currentEpoch > epoch ){
+            advance( currentRetentionConfiguration, currentEpoch );
+        }
+        if( currentEpoch < epoch ){
+            // Someone still working with a configuration that was replaced. The cache
+            // belongs to the newer one, so neither read nor fill it.
+            return valueFor( metricName, match( metricName, currentRetentionConfiguration ), currentRetentionConfiguration );
+        }
+        Entry<V> cachedEntry = cache.get(metricName);
+        if( cachedEntry == null || !isCurrent( cachedEntry, currentRetentionConfiguration, currentEpoch ) ){
+            return findLevelWithoutCache( metricName, currentRetentionConfiguration, currentEpoch );
+        }
+        else {
+            tracker.cacheHit(cache.size(), cache.maxSize());
+            return log.exit( cachedEntry.value );
+        }
+    }
+
+    // Entries looked up in the configuration the current one replaced stay if the
+    // change could not affect them. Anything older is dropped.
+    private boolean isCurrent( Entry<V> entry, CacheableRetentionConfiguration config, long currentEpoch ){
+        long entryEpoch = entry.epoch;
+        if( entryEpoch == currentEpoch ){
+            return true;
+        } else if( entryEpoch > currentEpoch ){
+            return false;
+        }
+        ConfigurationDiff diff = config.changesSince( entryEpoch );
+        if( diff != null && keeps( entry.value, entry.match, diff ) ){
+            entry.epoch = currentEpoch;
+            return true;
+        }
+        return false;
+    }
+
+    // The cache might be shared between threads, so only the first thread
+    // to see a new configuration clears it. Entries are only kept if they
+    // were looked up in the configuration the new one replaced. Threads
+    // still holding an older configuration never move the epoch back.
+    private void advance( CacheableRetentionConfiguration config, long currentEpoch ){
+        epochLock.writeLock().lock();
+        try {
+            advanceLocked( config, currentEpoch );
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+    }
+
+    private void advanceLocked( CacheableRetentionConfiguration config, long currentEpoch ){
+        if( currentEpoch > epoch ){
+            ConfigurationDiff diff = config.changesSince( epoch );
+            if( diff == null ){
+                cache.clear();
+            } else {
+                log.debug( "{} carries entries over, {}", name, diff );
+            }
+            epoch = currentEpoch;
+        }
+    }
+    
+    private V findLevelWithoutCache( String metricName, CacheableRetentionConfiguration config, long lookupEpoch ){
+        long match = match( metricName, config );
+        V value = valueFor( metricName, match, config );
+        // a thread that already moved on to a newer configuration must not see this value
+        epochLock.readLock().lock();
+        try {
+            if( epoch == lookupEpoch ){
+                cache.put(metricName, new Entry<>( value, match, lookupEpoch ));
+                tracker.cacheMiss(cache.size(), cache.maxSize());
+            }
+        } finally {
+            epochLock.readLock().unlock();
+        }
+        return value;
+    }
+    
+    // The index of the matching pattern, or whatever else valueFor() and keeps() need.
+    protected abstract long match( String metricName, CacheableRetentionConfiguration config );
+
+    // May be null, null is cached like any other value, so names that match
+    // nothing do not go through the patterns again.
+    protected abstract V valueFor( String metricName, long match, CacheableRetentionConfiguration config );
+
+    // Whether a value looked up before the change is still the one the new configuration would return.
+    protected abstract boolean keeps( V value, long match, ConfigurationDiff diff );
+
+    public static final class Entry<V> {
+        private final V value;
+        private final long match;
+        // moves forward when the entry is carried over to a new configuration
+        private volatile long epoch;
+
+        Entry( V value, long match, long epoch ){
+            this.value = value;
+            this.match = match;
+            this.epoch = epoch;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package io.bifroest.retentions.cache;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import io.bifroest.commons.statistics.cache.CacheTracker;
+
+// Hands out either a per-thread MapCache or one shared between all threads,
+// depending on the current CacheConfiguration.
+public final class MapCacheProvider<V> {
+    private static final Logger log = LogManager.getLogger();
+
+    private final String localTrackerName;
+    private final String sharedTrackerName;
+    private final BiFunction<CacheTracker, ClassificationCache<MapCache.Entry<V>>, MapCache<V>> factory;
+
+    private final ThreadLocal<LocalCache<V>> localCache;
+    private volatile CacheTracker localTracker;
+    private volatile CacheTracker sharedTracker;
+
+    private volatile CacheConfiguration configuration;
+    // only set if configuration asks for a shared cache
+    private volatile MapCache<V> sharedCache;
+
+    public MapCacheProvider( String localTrackerName, String sharedTrackerName, BiFunction<CacheTracker, ClassificationCache<MapCache.Entry<V>>, MapCache<V>> factory ) {
+        this.localTrackerName = localTrackerName;
+        this.sharedTrackerName = sharedTrackerName;
+        this.factory = Objects.requireNonNull( factory );
+        this.localCache = new ThreadLocal<>();
+        this.configuration = CacheConfiguration.DEFAULT;
+    }
+
+    public MapCache<V> get() {
+        MapCache<V> shared = sharedCache;
+        if ( shared != null ) {
+            return shared;
+        }
+        CacheConfiguration currentConfiguration = configuration;
+        LocalCache<V> local = localCache.get();
+        if ( local == null || local.configuration != currentConfiguration ) {
+            log.trace( "Creating new {}", localTrackerName );
+            local = new LocalCache<>( currentConfiguration, factory.apply( localTracker(), currentConfiguration.<MapCache.Entry<V>> createCache() ) );
+            localCache.set( local );
+        }
+        return local.cache;
+    }
+
+    // Calling this again with an equal configuration keeps the current caches.
+    public synchronized void configure( CacheConfiguration newConfiguration ) {
+        if ( newConfiguration.equals( configuration ) ) {
+            return;
+        }
+        if ( newConfiguration.shared() ) {
+            if ( sharedTracker == null ) {
+                sharedTracker = CacheTracker.storingIn( sharedTrackerName );
+            }
+            sharedCache = factory.apply( sharedTracker, newConfiguration.<MapCache.Entry<V>> createCache() );
+        } else {
+            sharedCache = null;
+        }
+        configuration = newConfiguration;
+    }
+
+    private CacheTracker localTracker() {
+        if ( localTracker == null ) {
+            synchronized ( this ) {
+                if ( localTracker == null ) {
+                    localTracker = CacheTracker.storingIn( localTrackerName );
+                }
+            }
+        }
+        return localTracker;
+    }
+
+    private static final class LocalCache<V> {
+        private final CacheConfiguration configuration;
+        private final MapCache<V> cache;
+
+        LocalCache( CacheConfiguration configuration, MapCache<V> cache ) {
+            this.configuration = configuration;
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.bifroest.retentions.cache;
+
+import io.bifroest.retentions.MetricPolicy;
+import io.bifroest.retentions.CacheableRetentionConfiguration;
+import io.bifroest.retentions.ConfigurationDiff;
+import io.bifroest.commons.statistics.cache.CacheTracker;
+
+public class MetricPolicyMapCache extends MapCache<MetricPolicy> {
+    public MetricPolicyMapCache(CacheTracker tracker, String name) {
+        super(tracker, name);
+    }
+
+    public MetricPolicyMapCache(CacheTracker tracker, String name, ClassificationCache<Entry<MetricPolicy>> cache) {
+        super(tracker, name, cache);
+    }
+
+    @Override
+    protected long match( String metricName, CacheableRetentionConfiguration config ){
+        return config.matchPolicy( metricName );
+    }
+
+    @Override
+    protected MetricPolicy valueFor( String metricName, long match, CacheableRetentionConfiguration config ){
+        return config.policy( match, metricName );
+    }
+
+    @Override
+    protected boolean keeps( MetricPolicy policy, long match, ConfigurationDiff diff ){
+        return diff.keepsPolicy( policy, match );
+    }
+}
@@ -0,0 +1,70 @@
+package io.bifroest.retentions.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.collections4.map.LRUMap;
+
+// Thread safe LRU cache. Names are spread over independently locked stripes,
+// each one evicting on its own. The size is counted on the side, so reading
+// it does not take the stripe locks.
+public final class StripedLRUClassificationCache<V> implements ClassificationCache<V> {
+    private final LRUMap<String, V>[] stripes;
+    private final int mask;
+    private final int maxSize;
+    private final AtomicInteger size;
+
+    @SuppressWarnings( "unchecked" )
+    public StripedLRUClassificationCache( int capacity ) {
+        int stripeCount = Integer.highestOneBit( Math.max( 1, Math.min( capacity, 4 * Runtime.getRuntime().availableProcessors() ) ) );
+        this.stripes = new LRUMap[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ ) {
+            stripes[i] = new LRUMap<>( capacity / stripeCount );
+        }
+        this.mask = stripeCount - 1;
+        this.maxSize = ( capacity / stripeCount ) * stripeCount;
+        this.size = new AtomicInteger();
+    }
+
+    private LRUMap<String, V> stripeFor( String metricName ) {
+        int hash = metricName.hashCode();
+        return stripes[( hash ^ ( hash >>> 16 ) ) & mask];
+    }
+
+    @Override
+    public V get( String metricName ) {
+        LRUMap<String, V> stripe = stripeFor( metricName );
+        synchronized ( stripe ) {
+            return stripe.get( metricName );
+        }
+    }
+
+    @Override
+    public void put( String metricName, V value ) {
+        LRUMap<String, V> stripe = stripeFor( metricName );
+        synchronized ( stripe ) {
+            int before = stripe.size();
+            stripe.put( metricName, value );
+            size.addAndGet( stripe.size() - before );
+        }
+    }
+
+    @Override
+    public void clear() {
+        for ( LRUMap<String, V> stripe : stripes ) {
+            synchronized ( stripe ) {
+                size.addAndGet( -stripe.size() );
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int maxSize() {
+        return maxSize;
+    }
+}
@@ -11,6 +11,10 @@ import io.bifroest.retentions.MutableRetentionConfiguration;
 import io.bifroest.retentions.RetentionConfiguration;
 import io.bifroest.commons.statistics.cache.CacheTracker;
 
+// The per-thread cache from before MapCache, kept for code outside this project
+// that extends it. It caches per configuration instance and knows nothing of
+// epochs, shared caches or carrying entries over a reload.
+@Deprecated
 public abstract class ThreadLocalMapCache {
     
     private static final Logger log = LogManager.getLogger();
@@ -0,0 +1,145 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A fully expanded Aho-Corasick automaton over a fixed set of literals.
+ *
+ * Transitions are stored in a single int table indexed by state and
+ * alphabet column, so scanning a name is one table lookup per character.
+ * Characters that occur in no literal share column 0.
+ */
+final class AhoCorasick {
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final Map<Character, Integer> wideColumns;
+    private final int[] asciiColumns;
+    private final int width;
+    private final int[] transitions;
+    private final int[][] outputs;
+
+    AhoCorasick( List<String> literals ) {
+        this.asciiColumns = new int[128];
+        this.wideColumns = new HashMap<>();
+        int columns = 1;
+        for ( String literal : literals ) {
+            for ( int i = 0; i < literal.length(); i++ ) {
+                char c = literal.charAt( i );
+                if ( column( c ) == 0 ) {
+                    if ( c < asciiColumns.length ) {
+                        asciiColumns[c] = columns++;
+                    } else {
+                        wideColumns.put( c, columns++ );
+                    }
+                }
+            }
+        }
+        this.width = columns;
+
+        // build the trie
+        List<int[]> goTo = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        goTo.add( newRow() );
+        out.add( new ArrayList<Integer>() );
+        for ( int id = 0; id < literals.size(); id++ ) {
+            String literal = literals.get( id );
+            int state = 0;
+            for ( int i = 0; i < literal.length(); i++ ) {
+                int col = column( literal.charAt( i ) );
+                int next = goTo.get( state )[col];
+                if ( next < 0 ) {
+                    next = goTo.size();
+                    goTo.add( newRow() );
+                    out.add( new ArrayList<Integer>() );
+                    goTo.get( state )[col] = next;
+                }
+                state = next;
+            }
+            out.get( state ).add( id );
+        }
+
+        // expand failure links into a complete transition table
+        int states = goTo.size();
+        int[] fail = new int[states];
+        this.transitions = new int[states * width];
+        this.outputs = new int[states][];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for ( int col = 0; col < width; col++ ) {
+            int next = goTo.get( 0 )[col];
+            if ( next < 0 ) {
+                transitions[col] = 0;
+            } else {
+                transitions[col] = next;
+                fail[next] = 0;
+                queue.add( next );
+            }
+        }
+        outputs[0] = toArray( out.get( 0 ) );
+        while ( !queue.isEmpty() ) {
+            int state = queue.poll();
+            List<Integer> stateOutput = out.get( state );
+            stateOutput.addAll( out.get( fail[state] ) );
+            outputs[state] = toArray( stateOutput );
+            for ( int col = 0; col < width; col++ ) {
+                int next = goTo.get( state )[col];
+                if ( next < 0 ) {
+                    transitions[state * width + col] = transitions[fail[state] * width + col];
+                } else {
+                    transitions[state * width + col] = next;
+                    fail[next] = transitions[fail[state] * width + col];
+                    queue.add( next );
+                }
+            }
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[width];
+        Arrays.fill( row, -1 );
+        return row;
+    }
+
+    private static int[] toArray( List<Integer> ids ) {
+        if ( ids.isEmpty() ) {
+            return NO_OUTPUT;
+        }
+        int[] result = new int[ids.size()];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[i] = ids.get( i );
+        }
+        return result;
+    }
+
+    private int column( char c ) {
+        if ( c < asciiColumns.length ) {
+            return asciiColumns[c];
+        }
+        Integer col = wideColumns.get( c );
+        return col == null ? 0 : col;
+    }
+
+    /**
+     * Calls back with the id of every literal occurring in text. Ids may be
+     * reported more than once.
+     */
+    void scan( CharSequence text, LiteralListener listener ) {
+        int state = 0;
+        for ( int i = 0; i < text.length(); i++ ) {
+            state = transitions[state * width + column( text.charAt( i ) )];
+            int[] found = outputs[state];
+            for ( int j = 0; j < found.length; j++ ) {
+                listener.found( found[j] );
+            }
+        }
+    }
+
+    interface LiteralListener {
+        void found( int literalId );
+    }
+}
@@ -0,0 +1,203 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.regex.Pattern;
+
+/**
+ * Finds a literal that every match of a pattern must contain.
+ *
+ * This is deliberately conservative: whenever the pattern contains
+ * something we don't fully understand, we return an empty literal and
+ * the pattern is always handed to java.util.regex.
+ */
+final class LiteralExtractor {
+    private static final String ZERO_WIDTH_OR_CLASS_ESCAPES = "dDwWsSbBAGZzhHvVR";
+    private static final String INLINE_FLAGS = "idmsuxU-";
+
+    private LiteralExtractor() {
+        // Do not instantiate.
+    }
+
+    static String requiredLiteral( Pattern pattern ) {
+        if ( pattern.flags() != 0 ) {
+            // CASE_INSENSITIVE, COMMENTS, LITERAL and friends change what a literal is.
+            return "";
+        }
+        String regex = pattern.pattern();
+        String best = "";
+        StringBuilder run = new StringBuilder();
+
+        int i = 0;
+        while ( i < regex.length() ) {
+            char c = regex.charAt( i );
+            char literal;
+            switch ( c ) {
+            case '\\':
+                if ( i + 1 >= regex.length() ) {
+                    return "";
+                }
+                char escaped = regex.charAt( i + 1 );
+                if ( Character.isLetterOrDigit( escaped ) ) {
+                    if ( ZERO_WIDTH_OR_CLASS_ESCAPES.indexOf( escaped ) < 0 ) {
+                        // quoting, hex and unicode escapes, properties, back references, ...
+                        return "";
+                    }
+                    best = longer( best, run );
+                    i += 2;
+                    continue;
+                }
+                literal = escaped;
+                i += 2;
+                break;
+            case '[':
+                i = skipCharacterClass( regex, i );
+                if ( i < 0 ) {
+                    return "";
+                }
+                best = longer( best, run );
+                continue;
+            case '(':
+                if ( i + 2 < regex.length() && regex.charAt( i + 1 ) == '?' && INLINE_FLAGS.indexOf( regex.charAt( i + 2 ) ) >= 0 ) {
+                    return "";
+                }
+                i = skipGroup( regex, i );
+                if ( i < 0 ) {
+                    return "";
+                }
+                best = longer( best, run );
+                continue;
+            case '|':
+            case ')':
+                return "";
+            case '.':
+            case '^':
+            case '$':
+                best = longer( best, run );
+                i++;
+                continue;
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                // quantifier on something that wasn't a literal
+                i = skipQuantifier( regex, i );
+                if ( i < 0 ) {
+                    return "";
+                }
+                best = longer( best, run );
+                continue;
+            default:
+                if ( Character.isSurrogate( c ) ) {
+                    // a quantifier would apply to the whole code point
+                    return "";
+                }
+                literal = c;
+                i++;
+                break;
+            }
+
+            char next = i < regex.length() ? regex.charAt( i ) : 0;
+            if ( next == '?' || next == '*' || next == '{' ) {
+                // the literal is optional (or we don't know how often it occurs)
+                best = longer( best, run );
+                i = skipQuantifier( regex, i );
+                if ( i < 0 ) {
+                    return "";
+                }
+            } else if ( next == '+' ) {
+                run.append( literal );
+                best = longer( best, run );
+                i = skipQuantifier( regex, i );
+            } else {
+                run.append( literal );
+            }
+        }
+        return longer( best, run );
+    }
+
+    private static String longer( String best, StringBuilder run ) {
+        String result = best;
+        if ( run.length() > best.length() ) {
+            result = run.toString();
+        }
+        run.setLength( 0 );
+        return result;
+    }
+
+    private static int skipQuantifier( String regex, int i ) {
+        if ( regex.charAt( i ) == '{' ) {
+            int end = regex.indexOf( '}', i );
+            if ( end < 0 ) {
+                return -1;
+            }
+            i = end + 1;
+        } else {
+            i++;
+        }
+        // lazy or possessive modifier
+        if ( i < regex.length() && ( regex.charAt( i ) == '?' || regex.charAt( i ) == '+' ) ) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipCharacterClass( String regex, int i ) {
+        int depth = 0;
+        while ( i < regex.length() ) {
+            char c = regex.charAt( i );
+            if ( c == '\\' ) {
+                i += 2;
+                continue;
+            }
+            if ( c == '[' ) {
+                depth++;
+                i++;
+                // a leading ']' (possibly after '^') is a literal
+                if ( i < regex.length() && regex.charAt( i ) == '^' ) {
+                    i++;
+                }
+                if ( i < regex.length() && regex.charAt( i ) == ']' ) {
+                    i++;
+                }
+                continue;
+            }
+            if ( c == ']' ) {
+                depth--;
+                i++;
+                if ( depth == 0 ) {
+                    return i;
+                }
+                continue;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipGroup( String regex, int i ) {
+        int depth = 0;
+        while ( i < regex.length() ) {
+            char c = regex.charAt( i );
+            if ( c == '\\' ) {
+                i += 2;
+                continue;
+            }
+            if ( c == '[' ) {
+                i = skipCharacterClass( regex, i );
+                if ( i < 0 ) {
+                    return -1;
+                }
+                continue;
+            }
+            if ( c == '(' ) {
+                depth++;
+            } else if ( c == ')' ) {
+                depth--;
+                if ( depth == 0 ) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
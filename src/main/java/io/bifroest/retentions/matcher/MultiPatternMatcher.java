@@ -0,0 +1,114 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a name against an ordered list of patterns and reports the first
+ * pattern that finds a match, exactly like walking the list with
+ * {@link java.util.regex.Matcher#find()}.
+ *
+ * For every pattern we extract a literal every match has to contain. A single
+ * Aho-Corasick pass over the name tells us which of these literals occur, and
+ * only those patterns (plus the ones without a usable literal) are handed to
+ * java.util.regex.
+ */
+public final class MultiPatternMatcher implements PatternMatcher {
+    private final Pattern[] patterns;
+    private final boolean[] alwaysCandidate;
+    private final int[][] patternsForLiteral;
+    private final AhoCorasick automaton;
+
+    public MultiPatternMatcher( Collection<Pattern> patterns ) {
+        this.patterns = patterns.toArray( new Pattern[patterns.size()] );
+        this.alwaysCandidate = new boolean[this.patterns.length];
+
+        Map<String, List<Integer>> byLiteral = new HashMap<>();
+        List<String> literals = new ArrayList<>();
+        for ( int i = 0; i < this.patterns.length; i++ ) {
+            String literal = LiteralExtractor.requiredLiteral( this.patterns[i] );
+            if ( literal.isEmpty() ) {
+                alwaysCandidate[i] = true;
+                continue;
+            }
+            List<Integer> ids = byLiteral.get( literal );
+            if ( ids == null ) {
+                ids = new ArrayList<>();
+                byLiteral.put( literal, ids );
+                literals.add( literal );
+            }
+            ids.add( i );
+        }
+
+        this.patternsForLiteral = new int[literals.size()][];
+        for ( int id = 0; id < literals.size(); id++ ) {
+            List<Integer> ids = byLiteral.get( literals.get( id ) );
+            patternsForLiteral[id] = new int[ids.size()];
+            for ( int j = 0; j < ids.size(); j++ ) {
+                patternsForLiteral[id][j] = ids.get( j );
+            }
+        }
+        this.automaton = new AhoCorasick( literals );
+    }
+
+    @Override
+    public int size() {
+        return patterns.length;
+    }
+
+    @Override
+    public Pattern pattern( int index ) {
+        return patterns[index];
+    }
+
+    public int firstMatch( String name ) {
+        return candidates( name ).firstMatch( 0, patterns.length );
+    }
+
+    public int firstMatch( String name, int from, int to ) {
+        return candidates( name ).firstMatch( from, to );
+    }
+
+    /**
+     * Runs the literal prefilter once. The result can answer first-match
+     * queries for several disjoint index ranges of the same name.
+     */
+    @Override
+    public Candidates candidates( String name ) {
+        final long[] found = new long[( patterns.length + 63 ) >>> 6];
+        automaton.scan( name, literalId -> {
+            for ( int index : patternsForLiteral[literalId] ) {
+                found[index >>> 6] |= 1L << index;
+            }
+        } );
+        return new Candidates( name, found );
+    }
+
+    public final class Candidates implements Matches {
+        private final String name;
+        private final long[] found;
+
+        private Candidates( String name, long[] found ) {
+            this.name = name;
+            this.found = found;
+        }
+
+        @Override
+        public int firstMatch( int from, int to ) {
+            for ( int i = from; i < to; i++ ) {
+                if ( isCandidate( i ) && patterns[i].matcher( name ).find() ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public boolean isCandidate( int index ) {
+            return alwaysCandidate[index] || ( found[index >>> 6] & ( 1L << index ) ) != 0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches a name against an ordered list of patterns. The answer has to be the
+ * first pattern that finds a match, exactly like walking the list with
+ * {@link java.util.regex.Matcher#find()}.
+ */
+public interface PatternMatcher {
+    int size();
+
+    Pattern pattern( int index );
+
+    /**
+     * Does the work that is shared between all patterns for this name once, the
+     * result can answer first-match queries for several index ranges.
+     */
+    Matches candidates( String name );
+
+    interface Matches {
+        // the first pattern in [from, to) that matches, -1 if there is none
+        int firstMatch( int from, int to );
+    }
+}
@@ -0,0 +1,170 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A pattern taken apart into dot separated segments, each of them a literal, a
+ * group of literal alternatives, {@code [^.]*} or {@code [^.]+}. Four shapes are
+ * understood, everything else is left to java.util.regex:
+ *
+ * <pre>
+ * ^a\.b$            the whole name
+ * ^a\.b\.  ^a\.b\..*  the first segments, more segments follow
+ * \.a\.b$  .*\.a\.b$  the last segments, more segments come before
+ * \.a\.b\.  .*\.a\.b\..*  segments in the middle, with more on both sides
+ * </pre>
+ *
+ * This only agrees with {@link java.util.regex.Matcher#find()} for names without
+ * line terminators, because {@code $} may match before a final one and
+ * {@code .} never matches them.
+ */
+final class SegmentPattern {
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    enum Kind {
+        LITERALS, ANY, NON_EMPTY
+    }
+
+    static final class Segment {
+        final Kind kind;
+        // only for LITERALS
+        final List<String> literals;
+
+        Segment( Kind kind, List<String> literals ) {
+            this.kind = kind;
+            this.literals = literals;
+        }
+    }
+
+    // segments start at the first segment of the name, otherwise at any later one
+    final boolean anchored;
+    // more segments follow the last one, otherwise it is the last segment of the name
+    final boolean more;
+    final List<Segment> segments;
+
+    private SegmentPattern( boolean anchored, boolean more, List<Segment> segments ) {
+        this.anchored = anchored;
+        this.more = more;
+        this.segments = Collections.unmodifiableList( segments );
+    }
+
+    // null if the pattern has some other shape
+    static SegmentPattern parse( Pattern pattern ) {
+        if ( pattern.flags() != 0 ) {
+            return null;
+        }
+        String regex = pattern.pattern();
+        int i = 0;
+        boolean anchored = false;
+        if ( regex.startsWith( "^" ) ) {
+            anchored = true;
+            i++;
+        }
+        if ( regex.startsWith( ".*", i ) ) {
+            anchored = false;
+            i += 2;
+            if ( !regex.startsWith( "\\.", i ) ) {
+                return null;
+            }
+        }
+        if ( !anchored ) {
+            if ( !regex.startsWith( "\\.", i ) ) {
+                return null;
+            }
+            i += 2;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        while ( true ) {
+            int[] end = new int[1];
+            Segment segment = parseSegment( regex, i, end );
+            if ( segment == null ) {
+                return null;
+            }
+            segments.add( segment );
+            i = end[0];
+            if ( regex.startsWith( "\\.", i ) ) {
+                i += 2;
+                String rest = regex.substring( i );
+                if ( rest.isEmpty() || rest.equals( ".*" ) || rest.equals( ".*$" ) ) {
+                    return new SegmentPattern( anchored, true, segments );
+                }
+            } else if ( i == regex.length() - 1 && regex.charAt( i ) == '$' ) {
+                return new SegmentPattern( anchored, false, segments );
+            } else {
+                // the last segment would only be a prefix of a name segment
+                return null;
+            }
+        }
+    }
+
+    private static Segment parseSegment( String regex, int start, int[] end ) {
+        for ( String any : new String[] { "[^.]*?", "[^.]*" } ) {
+            if ( regex.startsWith( any, start ) ) {
+                end[0] = start + any.length();
+                return new Segment( Kind.ANY, null );
+            }
+        }
+        for ( String nonEmpty : new String[] { "[^.]+?", "[^.]+" } ) {
+            if ( regex.startsWith( nonEmpty, start ) ) {
+                end[0] = start + nonEmpty.length();
+                return new Segment( Kind.NON_EMPTY, null );
+            }
+        }
+
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = start;
+        boolean group = i < regex.length() && regex.charAt( i ) == '(';
+        if ( group ) {
+            i++;
+            if ( regex.startsWith( "?", i ) ) {
+                if ( !regex.startsWith( "?:", i ) ) {
+                    return null;
+                }
+                i += 2;
+            }
+        }
+        while ( i < regex.length() ) {
+            char c = regex.charAt( i );
+            if ( c == '\\' ) {
+                if ( i + 1 >= regex.length() ) {
+                    return null;
+                }
+                char escaped = regex.charAt( i + 1 );
+                if ( escaped == '.' && !group ) {
+                    break;
+                } else if ( escaped == '.' || Character.isLetterOrDigit( escaped ) ) {
+                    // a dot inside a group, character classes, quoting, ...
+                    return null;
+                }
+                literal.append( escaped );
+                i += 2;
+            } else if ( group && c == '|' ) {
+                literals.add( literal.toString() );
+                literal.setLength( 0 );
+                i++;
+            } else if ( group && c == ')' ) {
+                group = false;
+                i++;
+                break;
+            } else if ( !group && c == '$' ) {
+                break;
+            } else if ( META_CHARACTERS.indexOf( c ) >= 0 ) {
+                return null;
+            } else {
+                literal.append( c );
+                i++;
+            }
+        }
+        if ( group ) {
+            return null;
+        }
+        literals.add( literal.toString() );
+        end[0] = i;
+        return new Segment( Kind.LITERALS, literals );
+    }
+}
@@ -0,0 +1,236 @@
+package io.bifroest.retentions.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches dotted names against patterns made of whole name segments with a trie
+ * of segments, see {@link SegmentPattern} for the shapes it understands. One walk
+ * over the segments of a name answers all of these patterns at once, the other
+ * patterns go through a {@link MultiPatternMatcher}. First-match order is the order
+ * of the pattern list, no matter which way a pattern is matched.
+ */
+public final class SegmentTrieMatcher implements PatternMatcher {
+    private final Pattern[] patterns;
+    // index in fallback, -1 for patterns in the tries
+    private final int[] fallbackIndex;
+    private final int trieSize;
+    private final MultiPatternMatcher fallback;
+    // patterns that start at the first segment, and those that start anywhere after it
+    private final Node anchored;
+    private final Node floating;
+
+    public SegmentTrieMatcher( Collection<Pattern> patterns ) {
+        this.patterns = patterns.toArray( new Pattern[patterns.size()] );
+        this.fallbackIndex = new int[this.patterns.length];
+        this.anchored = new Node();
+        this.floating = new Node();
+
+        List<Pattern> fallbackPatterns = new ArrayList<>();
+        int inTries = 0;
+        for ( int i = 0; i < this.patterns.length; i++ ) {
+            SegmentPattern segments = SegmentPattern.parse( this.patterns[i] );
+            if ( segments == null ) {
+                fallbackIndex[i] = fallbackPatterns.size();
+                fallbackPatterns.add( this.patterns[i] );
+            } else {
+                fallbackIndex[i] = -1;
+                insert( segments.anchored ? anchored : floating, segments, 0, i );
+                inTries++;
+            }
+        }
+        this.trieSize = inTries;
+        this.fallback = new MultiPatternMatcher( fallbackPatterns );
+    }
+
+    private static void insert( Node node, SegmentPattern pattern, int depth, int index ) {
+        if ( depth == pattern.segments.size() ) {
+            if ( pattern.more ) {
+                node.more = add( node.more, index );
+            } else {
+                node.last = add( node.last, index );
+            }
+            return;
+        }
+        SegmentPattern.Segment segment = pattern.segments.get( depth );
+        switch ( segment.kind ) {
+        case ANY:
+            if ( node.any == null ) {
+                node.any = new Node();
+            }
+            insert( node.any, pattern, depth + 1, index );
+            break;
+        case NON_EMPTY:
+            if ( node.nonEmpty == null ) {
+                node.nonEmpty = new Node();
+            }
+            insert( node.nonEmpty, pattern, depth + 1, index );
+            break;
+        default:
+            for ( String literal : segment.literals ) {
+                Node child = node.literals.get( literal );
+                if ( child == null ) {
+                    child = new Node();
+                    node.literals.put( literal, child );
+                }
+                insert( child, pattern, depth + 1, index );
+            }
+        }
+    }
+
+    private static int[] add( int[] indices, int index ) {
+        if ( indices.length > 0 && indices[indices.length - 1] == index ) {
+            // the same pattern through two alternatives
+            return indices;
+        }
+        int[] result = Arrays.copyOf( indices, indices.length + 1 );
+        result[indices.length] = index;
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return patterns.length;
+    }
+
+    // how many patterns are matched with the tries
+    public int trieSize() {
+        return trieSize;
+    }
+
+    @Override
+    public Pattern pattern( int index ) {
+        return patterns[index];
+    }
+
+    @Override
+    public Matches candidates( String name ) {
+        if ( hasLineTerminator( name ) ) {
+            return new RegexMatches( name );
+        }
+        long[] matched = new long[( patterns.length + 63 ) >>> 6];
+        if ( trieSize > 0 ) {
+            String[] segments = split( name );
+            walk( anchored, segments, 0, matched );
+            for ( int start = 1; start < segments.length; start++ ) {
+                walk( floating, segments, start, matched );
+            }
+        }
+        return new TrieMatches( name, matched, fallback.size() > 0 ? fallback.candidates( name ) : null );
+    }
+
+    private static boolean hasLineTerminator( String name ) {
+        for ( int i = 0; i < name.length(); i++ ) {
+            char c = name.charAt( i );
+            if ( c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] split( String name ) {
+        int count = 1;
+        for ( int i = 0; i < name.length(); i++ ) {
+            if ( name.charAt( i ) == '.' ) {
+                count++;
+            }
+        }
+        String[] segments = new String[count];
+        int start = 0;
+        for ( int i = 0; i < count - 1; i++ ) {
+            int dot = name.indexOf( '.', start );
+            segments[i] = name.substring( start, dot );
+            start = dot + 1;
+        }
+        segments[count - 1] = name.substring( start );
+        return segments;
+    }
+
+    // node has consumed the segments before index
+    private static void walk( Node node, String[] segments, int index, long[] matched ) {
+        if ( index == segments.length ) {
+            mark( node.last, matched );
+            return;
+        }
+        mark( node.more, matched );
+        String segment = segments[index];
+        Node literal = node.literals.get( segment );
+        if ( literal != null ) {
+            walk( literal, segments, index + 1, matched );
+        }
+        if ( node.any != null ) {
+            walk( node.any, segments, index + 1, matched );
+        }
+        if ( node.nonEmpty != null && !segment.isEmpty() ) {
+            walk( node.nonEmpty, segments, index + 1, matched );
+        }
+    }
+
+    private static void mark( int[] indices, long[] matched ) {
+        for ( int index : indices ) {
+            matched[index >>> 6] |= 1L << index;
+        }
+    }
+
+    private static final class Node {
+        private static final int[] NONE = new int[0];
+
+        private final Map<String, Node> literals = new HashMap<>( 4 );
+        private Node any;
+        private Node nonEmpty;
+        // patterns ending here if this is the last segment, and if more segments follow
+        private int[] last = NONE;
+        private int[] more = NONE;
+    }
+
+    private final class TrieMatches implements Matches {
+        private final String name;
+        private final long[] matched;
+        private final MultiPatternMatcher.Candidates fallbackCandidates;
+
+        TrieMatches( String name, long[] matched, MultiPatternMatcher.Candidates fallbackCandidates ) {
+            this.name = name;
+            this.matched = matched;
+            this.fallbackCandidates = fallbackCandidates;
+        }
+
+        @Override
+        public int firstMatch( int from, int to ) {
+            for ( int i = from; i < to; i++ ) {
+                int regex = fallbackIndex[i];
+                if ( regex < 0 ) {
+                    if ( ( matched[i >>> 6] & ( 1L << i ) ) != 0 ) {
+                        return i;
+                    }
+                } else if ( fallbackCandidates.isCandidate( regex ) && patterns[i].matcher( name ).find() ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final class RegexMatches implements Matches {
+        private final String name;
+
+        RegexMatches( String name ) {
+            this.name = name;
+        }
+
+        @Override
+        public int firstMatch( int from, int to ) {
+            for ( int i = from; i < to; i++ ) {
+                if ( patterns[i].matcher( name ).find() ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.bifroest.retentions.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Thread safe bounded map using CLOCK (second chance) eviction.
+// Hits never take a lock, they only set the reference bit of the entry.
+// Inserts and evictions are serialized, which is fine as long as inserts only
+// happen after a miss that was expensive anyway.
+public final class ClockCache<K, V> {
+    private final ConcurrentHashMap<K, Node<K, V>> entries;
+    private final Node<K, V>[] clock;
+
+    private final Object writeLock = new Object();
+    private int hand;
+    private int used;
+
+    @SuppressWarnings( "unchecked" )
+    public ClockCache( int capacity ) {
+        if ( capacity <= 0 ) {
+            throw new IllegalArgumentException( "capacity must be positive, got " + capacity );
+        }
+        this.entries = new ConcurrentHashMap<>( capacity * 4 / 3 + 1 );
+        this.clock = new Node[capacity];
+    }
+
+    public V get( K key ) {
+        Node<K, V> node = entries.get( key );
+        if ( node == null ) {
+            return null;
+        }
+        if ( !node.referenced ) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    public void put( K key, V value ) {
+        synchronized ( writeLock ) {
+            Node<K, V> existing = entries.get( key );
+            int slot;
+            if ( existing != null ) {
+                slot = existing.slot;
+            } else if ( used < clock.length ) {
+                slot = used++;
+            } else {
+                slot = evict();
+            }
+            Node<K, V> node = new Node<>( key, value, slot );
+            clock[slot] = node;
+            entries.put( key, node );
+        }
+    }
+
+    // writeLock must be held
+    private int evict() {
+        while ( true ) {
+            Node<K, V> candidate = clock[hand];
+            int slot = hand;
+            hand = ( hand + 1 ) % clock.length;
+            if ( candidate.referenced ) {
+                candidate.referenced = false;
+            } else {
+                entries.remove( candidate.key, candidate );
+                return slot;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized ( writeLock ) {
+            entries.clear();
+            Arrays.fill( clock, null );
+            hand = 0;
+            used = 0;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return clock.length;
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final int slot;
+        private volatile boolean referenced;
+
+        Node( K key, V value, int slot ) {
+            this.key = key;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
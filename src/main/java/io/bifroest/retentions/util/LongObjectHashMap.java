@@ -0,0 +1,165 @@
+package io.bifroest.retentions.util;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+// Open addressing map from primitive longs to objects, so lookups neither box the
+// key nor allocate entries. Null values are not supported, get() returns null for
+// missing keys. Not thread safe.
+public final class LongObjectHashMap<V> {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void visit( long key, V value );
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public LongObjectHashMap() {
+        this( 16 );
+    }
+
+    public LongObjectHashMap( int expectedSize ) {
+        allocate( capacityFor( expectedSize ) );
+    }
+
+    private static int capacityFor( int expectedSize ) {
+        long capacity = Long.highestOneBit( Math.max( 2, (long)Math.ceil( expectedSize / LOAD_FACTOR ) ) - 1 ) << 1;
+        if ( capacity > 1 << 30 ) {
+            throw new IllegalArgumentException( "too many entries: " + expectedSize );
+        }
+        return (int)capacity;
+    }
+
+    private void allocate( int capacity ) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int)( capacity * LOAD_FACTOR );
+    }
+
+    private int slot( long key ) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)( hash ^ ( hash >>> 32 ) ) & mask;
+    }
+
+    // the slot holding key, or the empty slot where it belongs
+    private int find( long key ) {
+        int slot = slot( key );
+        while ( values[slot] != null && keys[slot] != key ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( long key ) {
+        return (V)values[find( key )];
+    }
+
+    public boolean containsKey( long key ) {
+        return values[find( key )] != null;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V put( long key, V value ) {
+        if ( value == null ) {
+            throw new NullPointerException( "null values are not supported" );
+        }
+        int slot = find( key );
+        V previous = (V)values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if ( previous == null && ++size > resizeAt ) {
+            rehash( keys.length * 2 );
+        }
+        return previous;
+    }
+
+    public V computeIfAbsent( long key, LongFunction<? extends V> function ) {
+        V value = get( key );
+        if ( value == null ) {
+            value = function.apply( key );
+            if ( value != null ) {
+                put( key, value );
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V remove( long key ) {
+        int slot = find( key );
+        V previous = (V)values[slot];
+        if ( previous == null ) {
+            return null;
+        }
+        values[slot] = null;
+        size--;
+        // move later entries of the same probe sequence into the gap
+        int gap = slot;
+        int next = ( gap + 1 ) & mask;
+        while ( values[next] != null ) {
+            int home = slot( keys[next] );
+            if ( ( ( next - home ) & mask ) >= ( ( next - gap ) & mask ) ) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                values[next] = null;
+                gap = next;
+            }
+            next = ( next + 1 ) & mask;
+        }
+        return previous;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public void forEach( Visitor<? super V> visitor ) {
+        for ( int i = 0; i < values.length; i++ ) {
+            if ( values[i] != null ) {
+                visitor.visit( keys[i], (V)values[i] );
+            }
+        }
+    }
+
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for ( int i = 0; i < values.length; i++ ) {
+            if ( values[i] != null ) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill( values, null );
+        size = 0;
+    }
+
+    private void rehash( int capacity ) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate( capacity );
+        for ( int i = 0; i < oldValues.length; i++ ) {
+            if ( oldValues[i] != null ) {
+                int slot = find( oldKeys[i] );
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.model.Interval;
+import io.bifroest.commons.model.Metric;
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+import io.bifroest.commons.statistics.aggregation.ValueAggregationFactory;
+
+public class AggregatorTest {
+    private static final double NaN = Double.NaN;
+
+    private MutableRetentionConfiguration retentions;
+    private List<Metric> metrics;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        retentions.addFunctionEntry( "^max$", "max" );
+        retentions.addFunctionEntry( "^min$", "min" );
+        retentions.addFunctionEntry( "^last$", "last" );
+
+        metrics = new ArrayList<>();
+        // slot 0: 1, 5, 3 - slot 1: nothing - slot 2: 4 - slot 3: 2, -2
+        metrics.add( new Metric( "x", 100, 1 ) );
+        metrics.add( new Metric( "x", 105, 5 ) );
+        metrics.add( new Metric( "x", 109, 3 ) );
+        metrics.add( new Metric( "x", 120, 4 ) );
+        metrics.add( new Metric( "x", 139, 2 ) );
+        metrics.add( new Metric( "x", 130, -2 ) );
+        // outside of the interval
+        metrics.add( new Metric( "x", 90, 100 ) );
+        metrics.add( new Metric( "x", 140, 100 ) );
+    }
+
+    private double[] aggregate( String name ) {
+        return Aggregator.aggregate( name, metrics, new Interval( 100, 140 ), 10, retentions ).values();
+    }
+
+    @Test
+    public void testBuiltinFunctions() {
+        assertArrayEquals( new double[] { 5, NaN, 4, 2 }, aggregate( "max" ), 0 );
+        assertArrayEquals( new double[] { 1, NaN, 4, -2 }, aggregate( "min" ), 0 );
+        assertArrayEquals( new double[] { 3, NaN, 4, -2 }, aggregate( "last" ), 0 );
+        assertArrayEquals( new double[] { 3, NaN, 4, 0 }, aggregate( "average" ), 1e-9 );
+    }
+
+    @Test
+    public void testColumnarInputGivesTheSameResult() {
+        long[] timestamps = new long[metrics.size()];
+        double[] values = new double[metrics.size()];
+        for ( int i = 0; i < metrics.size(); i++ ) {
+            timestamps[i] = metrics.get( i ).timestamp();
+            values[i] = metrics.get( i ).value();
+        }
+        for ( String name : new String[] { "max", "min", "last", "average" } ) {
+            MetricSet expected = Aggregator.aggregate( name, metrics, new Interval( 100, 140 ), 10, retentions );
+            assertEquals( expected, Aggregator.aggregate( name, timestamps, values, new Interval( 100, 140 ), 10, retentions ) );
+        }
+    }
+
+    @Test
+    public void testParallelAggregationIsTheSameAsSequential() {
+        int points = 10000;
+        long[] timestamps = new long[points];
+        double[] values = new double[points];
+        for ( int i = 0; i < points; i++ ) {
+            // a point every 3 seconds, with some gaps
+            timestamps[i] = 1000 + 3 * i + ( i / 500 ) * 100;
+            values[i] = Math.sin( i );
+        }
+        Interval interval = new Interval( 1200, 40200 );
+        for ( String name : new String[] { "max", "min", "last", "average" } ) {
+            MetricSet expected = Aggregator.aggregate( name, timestamps, values, interval, 60, retentions );
+            ExecutorService executor = Executors.newFixedThreadPool( 4 );
+            try {
+                assertEquals( expected, Aggregator.aggregateParallel( name, timestamps, values, interval, 60, retentions, executor, 100 ) );
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals( expected, Aggregator.aggregateParallel( name, timestamps, values, interval, 60, retentions, ForkJoinPool.commonPool(), 1000 ) );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testColumnarInputIsValidated() {
+        Aggregator.aggregate( "max", new long[] { 100 }, new double[] { 1 }, new Interval( 105, 140 ), 10, retentions );
+    }
+
+    @Test
+    public void testRemoveMetricsOnlyRemovesAggregatedMetrics() {
+        Aggregator.aggregate( "max", metrics, new Interval( 100, 140 ), 10, retentions, true );
+        assertEquals( 2, metrics.size() );
+    }
+
+    @Test
+    public void testFunctionsWithoutKernelUseValueAggregation() {
+        ValueAggregationFactory countFactory = new ValueAggregationFactory() {
+            @Override
+            public String getFunctionName() {
+                return "count";
+            }
+
+            @Override
+            public ValueAggregation createAggregation() {
+                return new ValueAggregation() {
+                    private int count;
+
+                    @Override
+                    public void consumeValue( double value ) {
+                        count++;
+                    }
+
+                    @Override
+                    public double getAggregatedValue() {
+                        return count;
+                    }
+                };
+            }
+        };
+        RetentionConfiguration mocked = mock( RetentionConfiguration.class );
+        when( mocked.findPolicyForMetric( "x" ) ).thenReturn( new MetricPolicy( "count", countFactory, null, Collections.<RetentionLevel> emptyList() ) );
+
+        MetricSet result = Aggregator.aggregate( "x", metrics, new Interval( 100, 140 ), 10, mocked );
+        assertArrayEquals( new double[] { 3, NaN, 1, 2 }, result.values(), 0 );
+    }
+}
@@ -0,0 +1,143 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassificationIndexTest {
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory( "ClassificationIndexTest" );
+        file = directory.resolve( "classifications" );
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists( file );
+        Files.deleteIfExists( directory );
+    }
+
+    private MutableRetentionConfiguration configuration() {
+        MutableRetentionConfiguration retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( new RetentionLevel( "precise", 10, 2, 100, null ) );
+        retentions.addFunctionEntry( "^a", "max" );
+        retentions.addFunctionEntry( "^ab", "min" );
+        retentions.addAccessLevelEntry( "^a", "precise" );
+        return retentions;
+    }
+
+    @Test
+    public void testWrittenEntriesAreFound() throws IOException {
+        ClassificationIndex written = ClassificationIndex.empty( 42 );
+        for ( int i = 0; i < 1000; i++ ) {
+            written.record( "name" + i, i );
+        }
+        written.writeTo( file );
+
+        ClassificationIndex subject = ClassificationIndex.open( file, 42 );
+        assertEquals( 1000, subject.loadedSize() );
+        for ( int i = 0; i < 1000; i++ ) {
+            assertEquals( i, subject.find( "name" + i ) );
+        }
+        assertEquals( ClassificationIndex.NOT_FOUND, subject.find( "name1000" ) );
+    }
+
+    @Test
+    public void testRewriteKeepsLoadedEntries() throws IOException {
+        ClassificationIndex first = ClassificationIndex.empty( 42 );
+        first.record( "a", 1 );
+        first.writeTo( file );
+        ClassificationIndex second = ClassificationIndex.open( file, 42 );
+        second.record( "b", 2 );
+        second.writeTo( file );
+
+        ClassificationIndex subject = ClassificationIndex.open( file, 42 );
+        assertEquals( 2, subject.loadedSize() );
+        assertEquals( 1, subject.find( "a" ) );
+        assertEquals( 2, subject.find( "b" ) );
+    }
+
+    @Test
+    public void testOtherFingerprintsAreIgnored() throws IOException {
+        ClassificationIndex written = ClassificationIndex.empty( 42 );
+        written.record( "a", 1 );
+        written.writeTo( file );
+
+        ClassificationIndex subject = ClassificationIndex.open( file, 43 );
+        assertEquals( 0, subject.loadedSize() );
+        assertEquals( ClassificationIndex.NOT_FOUND, subject.find( "a" ) );
+    }
+
+    @Test
+    public void testCorruptFilesAreIgnored() throws IOException {
+        Files.write( file, new byte[100] );
+
+        assertEquals( 0, ClassificationIndex.open( file, 42 ).loadedSize() );
+    }
+
+    @Test
+    public void testFingerprintFollowsPatterns() {
+        long fingerprint = configuration().snapshot().fingerprint();
+        assertEquals( fingerprint, configuration().snapshot().fingerprint() );
+
+        MutableRetentionConfiguration changed = configuration();
+        changed.addFunctionEntry( "^x", "max" );
+        assertTrue( fingerprint != changed.snapshot().fingerprint() );
+
+        MutableRetentionConfiguration redefined = configuration();
+        redefined.addLevel( new RetentionLevel( "precise", 10, 4, 100, null ) );
+        assertEquals( fingerprint, redefined.snapshot().fingerprint() );
+    }
+
+    @Test
+    public void testSnapshotUsesAndFillsIndex() throws IOException {
+        RetentionConfigurationSnapshot retentions = configuration().snapshot();
+        // the patterns say max for abc, the index says min
+        ClassificationIndex written = ClassificationIndex.empty( retentions.fingerprint() );
+        written.record( "abc", PatternClassifier.policyMatch( 1, 0 ) );
+        written.writeTo( file );
+
+        ClassificationIndex index = ClassificationIndex.open( file, retentions.fingerprint() );
+        retentions.useIndex( index );
+
+        assertEquals( "min", retentions.findPolicyForMetric( "abc" ).functionName() );
+        assertEquals( "max", retentions.findPolicyForMetric( "ax" ).functionName() );
+        assertEquals( 1, index.recordedSize() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testIndexMustMatchPatterns() {
+        RetentionConfigurationSnapshot retentions = configuration().snapshot();
+        retentions.useIndex( ClassificationIndex.empty( retentions.fingerprint() + 1 ) );
+    }
+
+    @Test
+    public void testNamesWithoutAccessLevelAreNotRecorded() {
+        RetentionConfigurationSnapshot retentions = configuration().snapshot();
+        ClassificationIndex index = ClassificationIndex.empty( retentions.fingerprint() );
+        retentions.useIndex( index );
+
+        assertEquals( "average", retentions.findPolicyForMetric( "junk" ).functionName() );
+        assertEquals( 0, index.recordedSize() );
+    }
+
+    @Test
+    public void testRecordingStopsAtTheLimit() {
+        ClassificationIndex index = ClassificationIndex.empty( 1, 100 );
+        for ( int i = 0; i < 1000; i++ ) {
+            index.record( "name" + i, i );
+        }
+
+        assertEquals( 100, index.recordedSize() );
+    }
+}
@@ -0,0 +1,105 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassificationsTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel precise;
+    private RetentionLevel coarse;
+
+    @Before
+    public void setUp() {
+        precise = new RetentionLevel( "precise", 10, 2, 100, "coarse" );
+        coarse = new RetentionLevel( "coarse", 100, 2, 1000, null );
+
+        retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( precise );
+        retentions.addLevel( coarse );
+        retentions.addFunctionEntry( "^abc$", "max" );
+        retentions.addFunctionEntry( "^def$", "min" );
+        retentions.addAccessLevelEntry( "^a", "coarse" );
+        retentions.addAccessLevelEntry( "^d", "precise" );
+    }
+
+    @Test
+    public void testNamesAreDistinctInFirstSeenOrder() {
+        Classifications subject = retentions.classifyAll( Arrays.asList( "def", "abc", "def", "xyz", "abc" ) );
+
+        assertArrayEquals( new String[] { "def", "abc", "xyz" }, subject.names() );
+        assertEquals( 3, subject.size() );
+    }
+
+    @Test
+    public void testFunctionsAreNumberedInFirstSeenOrder() {
+        Classifications subject = retentions.classifyAll( Arrays.asList( "def", "abc", "xyz", "qrs" ) );
+
+        assertEquals( Arrays.asList( "min", "max", "average" ), subject.functions() );
+        assertArrayEquals( new int[] { 0, 1, 2, 2 }, subject.functionIds() );
+        assertEquals( "average", subject.functionName( 3 ) );
+    }
+
+    @Test
+    public void testLevelOrdinals() {
+        Classifications subject = retentions.classifyAll( Arrays.asList( "abc", "def", "xyz" ) );
+
+        assertEquals( retentions.ordinalOf( coarse ), subject.levelOrdinal( 0 ) );
+        assertEquals( retentions.ordinalOf( precise ), subject.levelOrdinal( 1 ) );
+        assertEquals( -1, subject.levelOrdinal( 2 ) );
+        assertEquals( coarse, subject.accessLevel( 0 ).get() );
+        assertFalse( subject.accessLevel( 2 ).isPresent() );
+    }
+
+    @Test
+    public void testStreamsAreCollectedFirst() {
+        Classifications subject = retentions.snapshot().classifyAll( Stream.of( "abc", "abc", "def" ) );
+
+        assertArrayEquals( new String[] { "abc", "def" }, subject.names() );
+        assertEquals( "min", subject.functionName( 1 ) );
+    }
+
+    @Test
+    public void testLargeBatchesAgreeWithSingleLookups() {
+        List<String> names = new ArrayList<>();
+        for ( int i = 0; i < 10000; i++ ) {
+            names.add( ( i % 3 == 0 ? "abc" : i % 3 == 1 ? "def" : "xyz" ) + ( i % 7 == 0 ? "" : "." + i ) );
+        }
+        RetentionConfigurationSnapshot snapshot = retentions.snapshot();
+
+        Classifications subject = snapshot.classifyAll( names );
+
+        for ( int i = 0; i < subject.size(); i++ ) {
+            MetricPolicy policy = snapshot.findPolicyForMetric( subject.name( i ) );
+            assertEquals( policy.functionName(), subject.functionName( i ) );
+            assertEquals( policy.accessLevel(), subject.accessLevel( i ) );
+        }
+    }
+
+    @Test
+    public void testBatchesFillTheIndexAfterwards() {
+        RetentionConfigurationSnapshot snapshot = retentions.snapshot();
+        ClassificationIndex index = ClassificationIndex.empty( snapshot.fingerprint() );
+        snapshot.useIndex( index );
+        List<String> names = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ ) {
+            names.add( ( i % 2 == 0 ? "abc." : "xyz." ) + i );
+        }
+
+        Classifications subject = snapshot.classifyAll( names );
+
+        // names without access level are not recorded
+        assertEquals( 500, index.recordedSize() );
+        for ( int i = 0; i < subject.size(); i++ ) {
+            assertEquals( snapshot.findPolicyForMetric( subject.name( i ) ).accessLevel(), subject.accessLevel( i ) );
+        }
+    }
+}
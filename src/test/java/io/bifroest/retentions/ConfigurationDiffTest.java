@@ -0,0 +1,217 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.statistics.cache.CacheTracker;
+import io.bifroest.retentions.cache.AccessLevelMapCache;
+import io.bifroest.retentions.cache.ClassificationCache;
+import io.bifroest.retentions.cache.MapCache;
+import io.bifroest.retentions.cache.StripedLRUClassificationCache;
+
+public class ConfigurationDiffTest {
+    private RetentionLevel precise;
+    private RetentionLevel coarse;
+    private RetentionLevel other;
+
+    @Before
+    public void setUp() {
+        precise = new RetentionLevel( "precise", 10, 2, 100, "coarse" );
+        coarse = new RetentionLevel( "coarse", 100, 2, 1000, null );
+        other = new RetentionLevel( "other", 60, 2, 600, null );
+    }
+
+    private MutableRetentionConfiguration configuration() {
+        MutableRetentionConfiguration retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( precise );
+        retentions.addLevel( coarse );
+        retentions.addLevel( other );
+        retentions.addFunctionEntry( "^abc", "max" );
+        retentions.addFunctionEntry( "^def", "min" );
+        retentions.addAccessLevelEntry( "^abc", "precise" );
+        retentions.addAccessLevelEntry( "^def", "other" );
+        return retentions;
+    }
+
+    @Test
+    public void testIdenticalConfigurationsChangeNothing() {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        ConfigurationDiff diff = configuration().snapshot( first ).changes();
+
+        assertEquals( first.epoch(), diff.fromEpoch() );
+        assertEquals( ConfigurationDiff.UNCHANGED, diff.firstChangedFunction() );
+        assertEquals( ConfigurationDiff.UNCHANGED, diff.firstChangedAccessLevel() );
+        assertTrue( diff.changedLevels().isEmpty() );
+        assertTrue( diff.keepsFunctionMatch( -1 ) );
+    }
+
+    @Test
+    public void testFirstChangedPatterns() {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        MutableRetentionConfiguration changed = new MutableRetentionConfiguration();
+        changed.addLevel( precise );
+        changed.addLevel( coarse );
+        changed.addLevel( other );
+        changed.addFunctionEntry( "^abc", "max" );
+        changed.addFunctionEntry( "^def", "last" );
+        changed.addAccessLevelEntry( "^abc", "precise" );
+        changed.addAccessLevelEntry( "^def", "other" );
+        changed.addAccessLevelEntry( "^xyz", "coarse" );
+
+        ConfigurationDiff diff = changed.snapshot( first ).changes();
+
+        assertEquals( 1, diff.firstChangedFunction() );
+        assertEquals( 2, diff.firstChangedAccessLevel() );
+        assertTrue( diff.keepsFunctionMatch( 0 ) );
+        assertFalse( diff.keepsFunctionMatch( 1 ) );
+        assertTrue( diff.keepsAccessLevelMatch( 1 ) );
+        assertFalse( diff.keepsAccessLevelMatch( -1 ) );
+    }
+
+    @Test
+    public void testChangedLevelsIncludeNext() {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        MutableRetentionConfiguration changed = configuration();
+        changed.addLevel( new RetentionLevel( "coarse", 100, 2, 1000, "other" ) );
+
+        assertEquals( Collections.singleton( "coarse" ), changed.snapshot( first ).changes().changedLevels() );
+    }
+
+    @Test
+    public void testUnaffectedLookupsSurviveReload() {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        MetricPolicy abc = first.findPolicyForMetric( "abc" );
+        MetricPolicy def = first.findPolicyForMetric( "def" );
+        assertEquals( "average", first.findPolicyForMetric( "xyz" ).functionName() );
+
+        MutableRetentionConfiguration changed = configuration();
+        changed.addFunctionEntry( "^xyz", "max" );
+        changed.addLevel( new RetentionLevel( "coarse", 100, 4, 1000, null ) );
+        RetentionConfigurationSnapshot second = changed.snapshot( first );
+
+        // the chain of abc holds the redefined level
+        MetricPolicy newAbc = second.findPolicyForMetric( "abc" );
+        assertNotSame( abc, newAbc );
+        assertEquals( 4, newAbc.levelChain().get( 1 ).blocks() );
+        assertSame( def, second.findPolicyForMetric( "def" ) );
+        assertEquals( "max", second.findPolicyForMetric( "xyz" ).functionName() );
+    }
+
+    @Test
+    public void testSkippedConfigurationsAreNotDiffed() {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        RetentionConfigurationSnapshot second = configuration().snapshot( first );
+        RetentionConfigurationSnapshot third = configuration().snapshot( second );
+
+        assertNull( third.changesSince( first.epoch() ) );
+        assertSame( third.changes(), third.changesSince( second.epoch() ) );
+    }
+
+    @Test
+    public void testMutableConfigurationDiffsEachChange() {
+        MutableRetentionConfiguration subject = new MutableRetentionConfiguration();
+        subject.addLevel( precise );
+        subject.addAccessLevelEntry( "^abc", "precise" );
+        subject.addAccessLevelEntry( "^def", "other" );
+        subject.addFunctionEntry( "^abc", "max" );
+        assertEquals( "precise", subject.findAccessLevelForMetric( "abcdef" ).get().name() );
+        long epoch = subject.epoch();
+
+        subject.addLevel( other );
+
+        ConfigurationDiff diff = subject.changesSince( epoch );
+        assertEquals( ConfigurationDiff.UNCHANGED, diff.firstChangedFunction() );
+        assertEquals( 1, diff.firstChangedAccessLevel() );
+        assertEquals( Collections.singleton( "other" ), diff.changedLevels() );
+        assertEquals( "precise", subject.findAccessLevelForMetric( "abcdef" ).get().name() );
+        assertEquals( "other", subject.findAccessLevelForMetric( "def" ).get().name() );
+    }
+
+    @Test
+    public void testAlternatingSnapshotsKeepASharedCacheWarm() throws InterruptedException {
+        RetentionConfigurationSnapshot first = configuration().snapshot();
+        MutableRetentionConfiguration changed = configuration();
+        changed.addFunctionEntry( "^xyz", "max" );
+        RetentionConfigurationSnapshot second = changed.snapshot( first );
+
+        CountingCache cache = new CountingCache( new StripedLRUClassificationCache<>( 1024 ) );
+        AccessLevelMapCache subject = new AccessLevelMapCache( CacheTracker.storingIn( "ConfigurationDiffTest" ), "ConfigurationDiffTest", cache );
+        for ( int i = 0; i < 100; i++ ) {
+            assertEquals( "precise", subject.get( "abc." + i, first ) );
+            assertEquals( "other", subject.get( "def." + i, first ) );
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        AtomicInteger wrong = new AtomicInteger();
+        for ( int t = 0; t < 4; t++ ) {
+            int offset = t;
+            threads.add( new Thread( () -> {
+                for ( int i = 0; i < 1000; i++ ) {
+                    RetentionConfigurationSnapshot snapshot = ( i + offset ) % 2 == 0 ? first : second;
+                    if ( !"precise".equals( subject.get( "abc." + i % 100, snapshot ) )
+                            || !"other".equals( subject.get( "def." + i % 100, snapshot ) ) ) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            } ) );
+        }
+        for ( Thread thread : threads ) {
+            thread.start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+
+        assertEquals( 0, wrong.get() );
+        // nothing was cleared or looked up again
+        assertEquals( 200, cache.size() );
+        assertEquals( 200, cache.puts.get() );
+    }
+
+    private static final class CountingCache implements ClassificationCache<MapCache.Entry<String>> {
+        private final ClassificationCache<MapCache.Entry<String>> delegate;
+        private final AtomicInteger puts = new AtomicInteger();
+
+        CountingCache( ClassificationCache<MapCache.Entry<String>> delegate ) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MapCache.Entry<String> get( String metricName ) {
+            return delegate.get( metricName );
+        }
+
+        @Override
+        public void put( String metricName, MapCache.Entry<String> value ) {
+            puts.incrementAndGet();
+            delegate.put( metricName, value );
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int maxSize() {
+            return delegate.maxSize();
+        }
+    }
+}
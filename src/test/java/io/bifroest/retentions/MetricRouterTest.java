@@ -0,0 +1,64 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.model.Metric;
+
+public class MetricRouterTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        minutes = new RetentionLevel( "minutes", 60, 2, 3600, "hours" );
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, null );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+        retentions.addAccessLevelEntry( "^fine\\.", "minutes" );
+        retentions.addAccessLevelEntry( "^coarse\\.", "hours" );
+    }
+
+    @Test
+    public void testGroupsByAccessTable() {
+        List<Metric> metrics = Arrays.asList(
+                new Metric( "coarse.a", 100, 1 ),
+                new Metric( "fine.a", 3700, 2 ),
+                new Metric( "fine.b", 100, 3 ),
+                new Metric( "unknown", 100, 4 ),
+                new Metric( "fine.a", 200, 5 ),
+                new Metric( "coarse.b", 90000, 6 ) );
+        MetricRouter router = new MetricRouter( retentions );
+        MetricRouter.Result result = router.route( metrics );
+
+        List<TableBatch> batches = result.batches();
+        assertEquals( 4, batches.size() );
+        assertEquals( new RetentionTable( minutes, 0 ), batches.get( 0 ).table() );
+        assertEquals( new RetentionTable( minutes, 1 ), batches.get( 1 ).table() );
+        assertEquals( new RetentionTable( hours, 0 ), batches.get( 2 ).table() );
+        assertEquals( new RetentionTable( hours, 1 ), batches.get( 3 ).table() );
+
+        TableBatch first = batches.get( 0 );
+        assertEquals( 2, first.size() );
+        assertEquals( "fine.b", first.name( 0 ) );
+        assertEquals( 100, first.timestamp( 0 ) );
+        assertEquals( 3, first.value( 0 ), 0 );
+        assertEquals( "fine.a", first.name( 1 ) );
+        assertEquals( 200, first.timestamps()[1] );
+        assertEquals( 5, first.values()[1], 0 );
+
+        assertEquals( 1, result.unrouted().size() );
+        assertEquals( "unknown", result.unrouted().get( 0 ).name() );
+
+        // tables are shared between batches
+        assertSame( first.table(), router.route( Arrays.asList( new Metric( "fine.c", 0, 0 ) ) ).batches().get( 0 ).table() );
+    }
+}
@@ -0,0 +1,104 @@
+package io.bifroest.retentions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import io.bifroest.commons.model.Interval;
+
+public class MetricSetCodecTest {
+    private static MetricSet roundTrip( MetricSet subject ) {
+        return MetricSetCodec.decode( ByteBuffer.wrap( MetricSetCodec.encode( subject ) ) );
+    }
+
+    @Test
+    public void testEmptySet() {
+        MetricSet subject = new MetricSet( "foo", new Interval( 0, 100 ), 10 );
+        assertEquals( subject, roundTrip( subject ) );
+    }
+
+    @Test
+    public void testRoundTripMatchesJSON() {
+        Random random = new Random( 42 );
+        MetricSet subject = new MetricSet( "foo.bar.baz", new Interval( 3600, 3600 + 60 * 5000 ), 60 );
+        double value = 100;
+        for ( int i = 0; i < 5000; i++ ) {
+            // gaps of varying length, constant stretches and noise
+            if ( random.nextInt( 10 ) == 0 ) {
+                i += random.nextInt( i % 3 == 0 ? 3000 : 50 );
+                continue;
+            }
+            if ( random.nextBoolean() ) {
+                value += random.nextGaussian();
+            }
+            subject.setValue( i, value );
+        }
+        subject.setValue( 4999, -0.0 );
+        subject.setValue( 4998, Double.MAX_VALUE );
+        subject.setValue( 4997, Double.NEGATIVE_INFINITY );
+
+        MetricSet decoded = roundTrip( subject );
+        assertEquals( subject, decoded );
+        assertEquals( MetricSet.fromJSON( subject.toJSON() ), decoded );
+        assertEquals( subject.size(), decoded.size() );
+        assertEquals( Double.doubleToRawLongBits( -0.0 ), Double.doubleToRawLongBits( decoded.getValue( 4999 ) ) );
+    }
+
+    @Test
+    public void testDenseConstantSetIsSmall() {
+        MetricSet subject = new MetricSet( "foo", new Interval( 0, 8000 ), 1 );
+        Arrays.fill( subject.values(), 1 );
+        byte[] encoded = MetricSetCodec.encode( subject );
+        // two bits per point, one for the index and one for the value
+        assertTrue( encoded.length < 8000 / 4 + 64 );
+        assertEquals( subject, MetricSetCodec.decode( ByteBuffer.wrap( encoded ) ) );
+    }
+
+    @Test
+    public void testSparseSetDecodesSparse() {
+        MetricSet subject = MetricSet.sparse( "foo", new Interval( 0, 100000 ), 1 );
+        subject.setValue( 5, 1 );
+        subject.setValue( 99999, 2 );
+        MetricSet decoded = roundTrip( subject );
+        assertTrue( decoded.isSparse() );
+        assertEquals( subject, decoded );
+    }
+
+    @Test
+    public void testStreamsAndConsecutiveSetsInOneBuffer() throws IOException {
+        MetricSet first = new MetricSet( "first", new Interval( 0, 10 ), 1 );
+        first.setValue( 3, 3 );
+        MetricSet second = new MetricSet( "zweite \u00fc", new Interval( 100, 200 ), 10 );
+        second.setValue( 0, 0.5 );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MetricSetCodec.write( first, out );
+        MetricSetCodec.write( second, out );
+        ByteArrayInputStream in = new ByteArrayInputStream( out.toByteArray() );
+        assertEquals( first, MetricSetCodec.read( in ) );
+        assertEquals( second, MetricSetCodec.read( in ) );
+
+        ByteBuffer buffer = ByteBuffer.allocate( 1024 );
+        MetricSetCodec.encode( first, buffer );
+        MetricSetCodec.encode( second, buffer );
+        buffer.flip();
+        assertEquals( first, MetricSetCodec.decode( buffer ) );
+        assertEquals( second, MetricSetCodec.decode( buffer ) );
+        assertFalse( buffer.hasRemaining() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testTruncatedInputIsRejected() {
+        MetricSet subject = new MetricSet( "foo", new Interval( 0, 10 ), 1 );
+        subject.setValue( 3, 3 );
+        byte[] encoded = MetricSetCodec.encode( subject );
+        MetricSetCodec.decode( ByteBuffer.wrap( Arrays.copyOf( encoded, encoded.length - 2 ) ) );
+    }
+}
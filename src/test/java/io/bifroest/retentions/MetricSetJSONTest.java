@@ -0,0 +1,111 @@
+package io.bifroest.retentions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import io.bifroest.commons.model.Interval;
+
+public class MetricSetJSONTest {
+    private static MetricSet subject( String name ) {
+        // millisecond timestamps do not fit into an int
+        long start = 1500000000000L;
+        MetricSet subject = new MetricSet( name, new Interval( start, start + 60000L * 20000 ), 60000L );
+        for ( int i = 0; i < 20000; i += 3 ) {
+            subject.setValue( i, i % 7 == 0 ? i : i / 3.0 );
+        }
+        subject.setValue( 2, 1e300 );
+        subject.setValue( 4, -1.25e-7 );
+        subject.setValue( 5, 12345678901234567890.0 );
+        return subject;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MetricSet subject = subject( "foo.\"bar\"\n\\baz" );
+        subject.setValue( 1, -0.0 );
+        StringWriter out = new StringWriter();
+        MetricSetJSON.write( subject, out );
+        MetricSet read = MetricSetJSON.read( new StringReader( out.toString() ) );
+        assertEquals( subject, read );
+        assertEquals( subject.interval(), read.interval() );
+    }
+
+    @Test
+    public void testStreamOutputMatchesDOM() throws IOException {
+        MetricSet subject = subject( "foo.bar" );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MetricSetJSON.write( subject, out );
+        assertEquals( subject, MetricSet.fromJSON( new JSONObject( new String( out.toByteArray(), "UTF-8" ) ) ) );
+        assertEquals( subject, MetricSetJSON.read( new ByteArrayInputStream( subject.toJSON().toString().getBytes( "UTF-8" ) ) ) );
+    }
+
+    @Test
+    public void testKeysInAnyOrderAndUnknownKeys() throws IOException {
+        String json = " { \"values\" : [ null, 1.5 , -2 ] , \"extra\": {\"a\": [true, false, null, \"x\"]},"
+                + " \"step\":10,\"name\":\"a\\u00fcb\", \"startTimestamp\" : 4294967300 } ";
+        MetricSet read = MetricSetJSON.read( new StringReader( json ) );
+        MetricSet expected = new MetricSet( "a\u00fcb", new Interval( 4294967300L, 4294967330L ), 10 );
+        expected.setValue( 1, 1.5 );
+        expected.setValue( 2, -2 );
+        assertEquals( expected, read );
+    }
+
+    @Test( expected = IOException.class )
+    public void testTruncatedInputIsRejected() throws IOException {
+        MetricSetJSON.read( new StringReader( "{\"name\":\"a\",\"step\":1,\"startTimestamp\":0,\"values\":[1," ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void testMissingKeysAreRejected() throws IOException {
+        MetricSetJSON.read( new StringReader( "{\"name\":\"a\",\"values\":[]}" ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void testStartNotOnStepIsRejected() throws IOException {
+        MetricSetJSON.read( new StringReader( "{\"name\":\"a\",\"step\":10,\"startTimestamp\":5,\"values\":[1]}" ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void testOverflowingEndIsRejected() throws IOException {
+        MetricSetJSON.read( new StringReader( "{\"name\":\"a\",\"step\":4611686018427387904,\"startTimestamp\":4611686018427387904,\"values\":[1,2]}" ) );
+    }
+
+    @Test
+    public void testShortDecimalsAreWrittenAsDecimals() throws IOException {
+        double[] values = { 0.1, 1.25, -3.375, 0.000025, 1 / 3.0, 123456.789 };
+        MetricSet subject = new MetricSet( "a", new Interval( 0, 10 * values.length ), 10 );
+        for ( int i = 0; i < values.length; i++ ) {
+            subject.setValue( i, values[i] );
+        }
+        StringWriter out = new StringWriter();
+        MetricSetJSON.write( subject, out );
+
+        assertEquals( "{\"name\":\"a\",\"startTimestamp\":0,\"step\":10,\"values\":[0.1,1.25,-3.375,0.000025,"
+                + Double.toString( 1 / 3.0 ) + ",123456.789]}", out.toString() );
+        assertEquals( subject, MetricSetJSON.read( new StringReader( out.toString() ) ) );
+    }
+
+    @Test
+    public void testDecimalsRoundTripThroughAnyParser() throws IOException {
+        Random random = new Random( 42 );
+        MetricSet subject = new MetricSet( "a", new Interval( 0, 10000 ), 10 );
+        for ( int i = 0; i < 1000; i++ ) {
+            double value = Math.round( random.nextGaussian() * 1e6 ) / Math.pow( 10, random.nextInt( 12 ) );
+            subject.setValue( i, i % 2 == 0 ? value : random.nextDouble() );
+        }
+        StringWriter out = new StringWriter();
+        MetricSetJSON.write( subject, out );
+
+        assertEquals( subject, MetricSetJSON.read( new StringReader( out.toString() ) ) );
+        assertEquals( subject, MetricSet.fromJSON( new JSONObject( out.toString() ) ) );
+    }
+}
@@ -0,0 +1,93 @@
+package io.bifroest.retentions;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import io.bifroest.commons.model.Interval;
+
+public class MetricSetMergeTest {
+    private static MetricSet set( long start, double... values ) {
+        MetricSet result = new MetricSet( "foo", new Interval( start, start + values.length * 10 ), 10 );
+        for ( int i = 0; i < values.length; i++ ) {
+            result.setValue( i, values[i] );
+        }
+        return result;
+    }
+
+    @Test
+    public void testSliceSharesValues() {
+        MetricSet subject = set( 0, 0, 1, 2, 3, 4, 5 );
+        MetricSet slice = subject.slice( new Interval( 20, 50 ) );
+        assertEquals( set( 20, 2, 3, 4 ), slice );
+        assertEquals( 3, slice.size() );
+
+        slice.setValue( 0, 20 );
+        assertEquals( 20, subject.getValue( 2 ), 0 );
+        subject.setValue( 3, Double.NaN );
+        assertTrue( Double.isNaN( slice.getValue( 1 ) ) );
+        assertEquals( 2, slice.size() );
+
+        MetricSet nested = slice.slice( new Interval( 40, 50 ) );
+        assertEquals( set( 40, 4 ), nested );
+        assertArrayEquals( new double[] { 4 }, nested.values(), 0 );
+    }
+
+    @Test
+    public void testSliceOfSparseSet() {
+        MetricSet subject = MetricSet.sparse( "foo", new Interval( 0, 1000 ), 10 );
+        subject.setValue( 5, 5 );
+        subject.setValue( 50, 50 );
+        MetricSet slice = subject.slice( new Interval( 40, 600 ) );
+        assertTrue( slice.isSparse() );
+        assertEquals( 2, slice.size() );
+        assertEquals( 5, slice.getValue( 1 ), 0 );
+        assertEquals( 50, slice.getValue( 46 ), 0 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testSliceOutsideInterval() {
+        set( 0, 1, 2 ).slice( new Interval( 10, 30 ) );
+    }
+
+    @Test
+    public void testMergeAdjacentBlocks() {
+        MetricSet merged = MetricSet.merge( MergePrecedence.FIRST_WINS, Arrays.asList(
+                set( 30, 3, Double.NaN ),
+                set( 0, 0, 1, 2 ) ) );
+        assertEquals( new Interval( 0, 50 ), merged.interval() );
+        assertEquals( set( 0, 0, 1, 2, 3, Double.NaN ), merged );
+    }
+
+    @Test
+    public void testMergePrecedence() {
+        MetricSet first = set( 0, 1, 1, Double.NaN, 1 );
+        MetricSet second = set( 10, 2, 2, 2, 2 );
+        assertEquals( set( 0, 1, 1, 2, 1, 2 ),
+                MetricSet.merge( MergePrecedence.FIRST_WINS, Arrays.asList( first, second ) ) );
+        assertEquals( set( 0, 1, 2, 2, 2, 2 ),
+                MetricSet.merge( MergePrecedence.LAST_WINS, Arrays.asList( first, second ) ) );
+        assertEquals( set( 20, 2, 1 ),
+                MetricSet.merge( new Interval( 20, 40 ), MergePrecedence.FIRST_WINS, Arrays.asList( first, second ) ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMergeDifferentSteps() {
+        MetricSet.merge( MergePrecedence.FIRST_WINS, Arrays.asList(
+                set( 0, 1 ),
+                new MetricSet( "foo", new Interval( 0, 20 ), 20 ) ) );
+    }
+
+    @Test
+    public void testMergeResultKeepsCountingValues() {
+        MetricSet result = MetricSet.merge( MergePrecedence.LAST_WINS, Arrays.asList( set( 0, 1, Double.NaN ), set( 30, 3 ) ) );
+        assertEquals( 2, result.size() );
+
+        result.setValue( 1, 2 );
+        assertEquals( 3, result.size() );
+        result.setValue( 0, Double.NaN );
+        assertEquals( 2, result.size() );
+    }
+}
@@ -1,5 +1,7 @@
 package io.bifroest.retentions;
 
+import java.util.Iterator;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -28,4 +30,97 @@ public class MetricSetTest {
         assertEquals( subject.size(), subjectAfterSerialization.size() );
         assertEquals( subject.interval(), subjectAfterSerialization.interval() );
     }
+
+    @Test
+    public void testSparseSetEqualsDenseSet() {
+        MetricSet dense = new MetricSet( "foo", new Interval( 0, 100 ), 1 );
+        MetricSet sparse = MetricSet.create( "foo", new Interval( 0, 100 ), 1, 0.01 );
+        assertTrue( sparse.isSparse() );
+        for ( MetricSet subject : new MetricSet[] { dense, sparse } ) {
+            subject.setValue( 42, 3 );
+            subject.add( new Metric( "foo", 7, 1 ) );
+            subject.setValue( 13, 2 );
+            subject.setValue( 13, Double.NaN );
+        }
+        assertTrue( sparse.isSparse() );
+        assertEquals( dense, sparse );
+        assertEquals( dense.hashCode(), sparse.hashCode() );
+        assertEquals( 2, sparse.size() );
+        assertEquals( 1, sparse.getValue( 7 ), 0 );
+        assertTrue( Double.isNaN( sparse.getValue( 13 ) ) );
+
+        Iterator<Metric> iterator = sparse.iterator();
+        Metric first = iterator.next();
+        assertEquals( 7, first.timestamp() );
+        assertEquals( 1, first.value(), 0 );
+        Metric second = iterator.next();
+        assertEquals( 42, second.timestamp() );
+        assertEquals( 3, second.value(), 0 );
+        assertFalse( iterator.hasNext() );
+
+        assertEquals( sparse, MetricSet.fromJSON( sparse.toJSON() ) );
+    }
+
+    @Test
+    public void testSparseSetSwitchesToDenseWhenFilling() {
+        MetricSet subject = MetricSet.sparse( "foo", new Interval( 0, 40 ), 1 );
+        for ( int i = 0; i < 40; i++ ) {
+            subject.setValue( i, i );
+        }
+        assertFalse( subject.isSparse() );
+        assertEquals( 40, subject.size() );
+        assertEquals( 39, subject.values()[39], 0 );
+    }
+
+    @Test
+    public void testValuesOfSparseSetIsBackingArray() {
+        MetricSet subject = MetricSet.sparse( "foo", new Interval( 0, 40 ), 1 );
+        subject.setValue( 3, 1 );
+        double[] values = subject.values();
+        assertFalse( subject.isSparse() );
+        assertEquals( 1, values[3], 0 );
+        values[4] = 2;
+        assertEquals( 2, subject.getValue( 4 ), 0 );
+    }
+
+    @Test
+    public void testSizeFollowsWrites() {
+        MetricSet subject = new MetricSet( "foo", new Interval( 0, 10 ), 1 );
+        subject.setValue( 1, 1 );
+        subject.setValue( 1, 2 );
+        subject.add( new Metric( "foo", 4, 4 ) );
+        assertEquals( 2, subject.size() );
+        subject.setValue( 1, Double.NaN );
+        assertEquals( 1, subject.size() );
+
+        subject.values()[7] = 7;
+        assertEquals( 2, subject.size() );
+    }
+
+    @Test
+    public void testVisitorAndCursorSkipEmptySlots() {
+        for ( MetricSet subject : new MetricSet[] {
+                new MetricSet( "foo", new Interval( 100, 200 ), 10 ),
+                MetricSet.sparse( "foo", new Interval( 100, 200 ), 10 ) } ) {
+            subject.setValue( 0, 1 );
+            subject.setValue( 9, 9 );
+
+            StringBuilder visited = new StringBuilder();
+            subject.forEach( ( timestamp, value ) -> visited.append( timestamp ).append( '=' ).append( value ).append( ' ' ) );
+            assertEquals( "100=1.0 190=9.0 ", visited.toString() );
+
+            MetricSetCursor cursor = new MetricSetCursor();
+            for ( int pass = 0; pass < 2; pass++ ) {
+                cursor.reset( subject );
+                assertTrue( cursor.next() );
+                assertEquals( 100, cursor.timestamp() );
+                assertEquals( 1, cursor.value(), 0 );
+                assertTrue( cursor.next() );
+                assertEquals( 190, cursor.timestamp() );
+                assertEquals( 9, cursor.value(), 0 );
+                assertFalse( cursor.next() );
+                assertFalse( cursor.next() );
+            }
+        }
+    }
 }
@@ -1,8 +1,12 @@
 package io.bifroest.retentions;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -41,4 +45,36 @@ public class MutableRetentionConfigurationFunctionsTest {
         assertEquals( MaxAggregation.class, agg2.getClass() );
         assertTrue( agg != agg2 );
     }
+
+    @Test
+    public void testPolicyHoldsFunctionAndLevelChain() {
+        RetentionLevel precise = new RetentionLevel( "precise", 10, 2, 100, "coarse" );
+        RetentionLevel coarse = new RetentionLevel( "coarse", 100, 2, 1000, null );
+        subject.addLevel( precise );
+        subject.addLevel( coarse );
+        subject.addAccessLevelEntry( "^abc$", "precise" );
+        subject.addAccessLevelEntry( "^def$", "coarse" );
+
+        MetricPolicy policy = subject.findPolicyForMetric( "abc" );
+        assertEquals( "max", policy.functionName() );
+        assertEquals( MaxAggregation.class, policy.createAggregation().getClass() );
+        assertEquals( precise, policy.accessLevel().get() );
+        assertEquals( Arrays.asList( precise, coarse ), policy.levelChain() );
+
+        MetricPolicy otherPolicy = subject.findPolicyForMetric( "def" );
+        assertEquals( "min", otherPolicy.functionName() );
+        assertEquals( Arrays.asList( coarse ), otherPolicy.levelChain() );
+
+        // names with the same function and level share a policy
+        assertSame( policy, subject.findPolicyForMetricWithoutCache( "abc" ) );
+    }
+
+    @Test
+    public void testPolicyWithoutAccessLevel() {
+        MetricPolicy policy = subject.findPolicyForMetric( "nothing.matches" );
+        assertEquals( "average", policy.functionName() );
+        assertFalse( policy.accessLevel().isPresent() );
+        assertTrue( policy.levelChain().isEmpty() );
+        assertFalse( policy.accessTable( 42 ).isPresent() );
+    }
 }
@@ -0,0 +1,100 @@
+package io.bifroest.retentions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import io.bifroest.commons.model.Interval;
+import io.bifroest.commons.model.Metric;
+
+public class OffHeapMetricSetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBehavesLikeHeapSet() {
+        MetricSet heap = new MetricSet( "foo", new Interval( 0, 100 ), 10 );
+        MetricSet offHeap = MetricSet.offHeap( "foo", new Interval( 0, 100 ), 10 );
+        assertTrue( offHeap.isOffHeap() );
+        for ( MetricSet subject : new MetricSet[] { heap, offHeap } ) {
+            subject.setValue( 1, 1 );
+            subject.add( new Metric( "foo", 50, 5 ) );
+            subject.setValue( 9, 9 );
+            subject.setValue( 9, Double.NaN );
+        }
+        assertEquals( heap, offHeap );
+        assertEquals( heap.hashCode(), offHeap.hashCode() );
+        assertEquals( 2, offHeap.size() );
+        assertEquals( heap.interval(), offHeap.interval() );
+        assertEquals( heap, MetricSet.fromJSON( offHeap.toJSON() ) );
+
+        double[] copy = offHeap.values();
+        copy[0] = 42;
+        assertTrue( Double.isNaN( offHeap.getValue( 0 ) ) );
+        assertTrue( offHeap.isOffHeap() );
+    }
+
+    @Test
+    public void testReleaseAfterLastReference() {
+        MetricSet subject = MetricSet.offHeap( "foo", new Interval( 0, 10 ), 1 );
+        subject.setValue( 0, 1 );
+        subject.retain();
+        assertFalse( subject.release() );
+        assertEquals( 1, subject.getValue( 0 ), 0 );
+        assertTrue( subject.release() );
+        try {
+            subject.getValue( 0 );
+            fail();
+        } catch ( IllegalStateException e ) {
+            // expected
+        }
+        try {
+            subject.retain();
+            fail();
+        } catch ( IllegalStateException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWrappedBufferIsWrittenThrough() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 8 + 4 * Double.BYTES );
+        buffer.position( 8 );
+        for ( int i = 0; i < 4; i++ ) {
+            buffer.putDouble( 8 + i * Double.BYTES, i == 2 ? 2 : Double.NaN );
+        }
+        MetricSet subject = MetricSet.wrap( "foo", new Interval( 0, 4 ), 1, buffer );
+        assertEquals( 1, subject.size() );
+        assertEquals( 2, subject.getValue( 2 ), 0 );
+        subject.setValue( 3, 3 );
+        assertEquals( 3, buffer.getDouble( 8 + 3 * Double.BYTES ), 0 );
+        subject.release();
+        // the buffer belongs to the caller and stays usable
+        assertEquals( 3, buffer.getDouble( 8 + 3 * Double.BYTES ), 0 );
+    }
+
+    @Test
+    public void testMappedSetSurvivesReopening() throws IOException {
+        File file = folder.newFile( "values" );
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            MetricSet subject = MetricSet.map( "foo", new Interval( 0, 100 ), 1, channel, 64 );
+            assertEquals( 0, subject.size() );
+            subject.setValue( 7, 7 );
+            subject.release();
+        }
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE ) ) {
+            MetricSet subject = MetricSet.map( "foo", new Interval( 0, 100 ), 1, channel, 64 );
+            assertEquals( 1, subject.size() );
+            assertEquals( 7, subject.getValue( 7 ), 0 );
+            subject.release();
+        }
+    }
+}
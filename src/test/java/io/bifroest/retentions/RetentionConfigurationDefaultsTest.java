@@ -0,0 +1,117 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.statistics.aggregation.MaxAggregation;
+import io.bifroest.commons.statistics.aggregation.ValueAggregation;
+
+public class RetentionConfigurationDefaultsTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionConfiguration subject;
+    private RetentionLevel precise;
+    private RetentionLevel coarse;
+
+    @Before
+    public void setUp() {
+        precise = new RetentionLevel( "precise", 10, 2, 100, "coarse" );
+        coarse = new RetentionLevel( "coarse", 100, 2, 1000, null );
+
+        retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( precise );
+        retentions.addLevel( coarse );
+        retentions.addFunctionEntry( "^abc$", "max" );
+        retentions.addAccessLevelEntry( "^a", "precise" );
+        subject = new Delegating( retentions );
+    }
+
+    @Test
+    public void testPolicyIsPutTogetherFromSingleLookups() {
+        MetricPolicy policy = subject.findPolicyForMetric( "abc" );
+
+        assertEquals( "max", policy.functionName() );
+        assertEquals( MaxAggregation.class, policy.createAggregation().getClass() );
+        assertEquals( precise, policy.accessLevel().get() );
+        assertEquals( Arrays.asList( precise, coarse ), policy.levelChain() );
+        assertEquals( retentions.findPolicyForMetric( "abc" ), policy );
+    }
+
+    @Test
+    public void testPolicyWithoutAccessLevel() {
+        MetricPolicy policy = subject.findPolicyForMetric( "xyz" );
+
+        assertEquals( "average", policy.functionName() );
+        assertFalse( policy.accessLevel().isPresent() );
+        assertEquals( 0, policy.levelChain().size() );
+    }
+
+    @Test
+    public void testOrdinalsFollowGetAllLevels() {
+        int ordinal = 0;
+        for ( RetentionLevel level : subject.getAllLevels() ) {
+            assertEquals( ordinal, subject.ordinalOf( level ) );
+            assertEquals( level, subject.getLevelForOrdinal( ordinal ).get() );
+            ordinal++;
+        }
+        assertEquals( -1, subject.ordinalOf( new RetentionLevel( "ancient", 1000, 2, 10000, null ) ) );
+        assertFalse( subject.getLevelForOrdinal( ordinal ).isPresent() );
+        assertFalse( subject.getLevelForOrdinal( -1 ).isPresent() );
+    }
+
+    // Only implements what an implementation written against the original interface would.
+    private static final class Delegating implements RetentionConfiguration {
+        private final RetentionConfiguration delegate;
+
+        Delegating( RetentionConfiguration delegate ) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ValueAggregation findFunctionForMetric( String name ) {
+            return delegate.findFunctionForMetric( name );
+        }
+
+        @Override
+        public Optional<RetentionTable> findAccessTableForMetric( String name, long timestamp ) {
+            return delegate.findAccessTableForMetric( name, timestamp );
+        }
+
+        @Override
+        public Optional<RetentionLevel> findAccessLevelForMetric( String name ) {
+            return delegate.findAccessLevelForMetric( name );
+        }
+
+        @Override
+        public Optional<RetentionLevel> getNextLevel( RetentionLevel level ) {
+            return delegate.getNextLevel( level );
+        }
+
+        @Override
+        public Optional<RetentionLevel> getLevelForName( String levelname ) {
+            return delegate.getLevelForName( levelname );
+        }
+
+        @Override
+        public Collection<RetentionLevel> getAllLevels() {
+            return delegate.getAllLevels();
+        }
+
+        @Override
+        public List<RetentionLevel> getAllAccessLevels() {
+            return delegate.getAllAccessLevels();
+        }
+
+        @Override
+        public List<RetentionLevel> getTopologicalSort() {
+            return delegate.getTopologicalSort();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.statistics.aggregation.MaxAggregation;
+import io.bifroest.commons.statistics.aggregation.MinAggregation;
+
+public class RetentionConfigurationSnapshotTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel precise;
+    private RetentionLevel coarse;
+
+    @Before
+    public void setUp() {
+        precise = new RetentionLevel( "precise", 10, 2, 100, "coarse" );
+        coarse = new RetentionLevel( "coarse", 100, 2, 1000, null );
+
+        retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( precise );
+        retentions.addLevel( coarse );
+        retentions.addFunctionEntry( "^abc$", "max" );
+        retentions.addFunctionEntry( "^def$", "min" );
+        retentions.addAccessLevelEntry( "^a", "coarse" );
+        retentions.addAccessLevelEntry( "^d", "precise" );
+        retentions.addAccessLevelEntry( "^ab", "coarse" );
+    }
+
+    @Test
+    public void testSnapshotAnswersLikeTheConfiguration() {
+        RetentionConfigurationSnapshot subject = retentions.snapshot();
+
+        assertEquals( MaxAggregation.class, subject.findFunctionForMetric( "abc" ).getClass() );
+        assertEquals( MinAggregation.class, subject.findFunctionForMetric( "def" ).getClass() );
+        assertEquals( "coarse", subject.findAccessLevelForMetric( "abc" ).get().name() );
+        assertEquals( "precise", subject.findPolicyForMetric( "def" ).accessLevel().get().name() );
+        assertEquals( coarse, subject.getNextLevel( precise ).get() );
+        assertFalse( subject.getNextLevel( coarse ).isPresent() );
+        assertEquals( retentions.ordinalOf( coarse ), subject.ordinalOf( coarse ) );
+        assertEquals( precise, subject.getLevelForOrdinal( subject.ordinalOf( precise ) ).get() );
+        assertEquals( retentions.getTopologicalSort(), subject.getTopologicalSort() );
+        assertEquals( 2, subject.getAllLevels().size() );
+    }
+
+    @Test
+    public void testAccessLevelsAreDistinctInDeclarationOrder() {
+        assertEquals( Arrays.asList( coarse, precise ), retentions.snapshot().getAllAccessLevels() );
+    }
+
+    @Test
+    public void testSnapshotIgnoresLaterChanges() {
+        RetentionConfigurationSnapshot subject = retentions.snapshot();
+        long epoch = subject.epoch();
+
+        retentions.addFunctionEntry( "^xyz$", "max" );
+        retentions.addLevel( new RetentionLevel( "ancient", 1000, 2, 10000, null ) );
+
+        assertEquals( epoch, subject.epoch() );
+        assertEquals( "average", subject.findAggregationNameThroughATonOfRegexes( "xyz" ) );
+        assertFalse( subject.getLevelForName( "ancient" ).isPresent() );
+        assertEquals( 2, subject.getAllLevels().size() );
+    }
+
+    @Test
+    public void testEpochsIncrease() {
+        RetentionConfigurationSnapshot first = retentions.snapshot();
+        RetentionConfigurationSnapshot second = retentions.snapshot();
+
+        assertNotSame( first, second );
+        assertTrue( second.epoch() > first.epoch() );
+        assertTrue( retentions.epoch() < first.epoch() );
+    }
+
+    @Test
+    public void testChangesInvalidateCachedLookups() {
+        assertEquals( "average", retentions.findPolicyForMetric( "xyz" ).functionName() );
+        long epoch = retentions.epoch();
+
+        retentions.addFunctionEntry( "^xyz$", "max" );
+
+        assertTrue( retentions.epoch() > epoch );
+        assertEquals( "max", retentions.findPolicyForMetric( "xyz" ).functionName() );
+        assertEquals( MaxAggregation.class, retentions.findFunctionForMetric( "xyz" ).getClass() );
+    }
+
+    @Test
+    public void testSegmentTrieClassifiesTheSame() {
+        retentions.addFunctionEntry( "\\.abc\\.[^.]*$", "last" );
+        RetentionConfigurationSnapshot regexes = retentions.snapshot();
+        retentions.useSegmentTrie( true );
+        RetentionConfigurationSnapshot trie = retentions.snapshot();
+
+        for ( String name : new String[] { "abc", "def", "x.abc.y", "abc.d", "x.abc.y.z" } ) {
+            assertEquals( name, regexes.findPolicyForMetric( name ), trie.findPolicyForMetric( name ) );
+        }
+        assertEquals( "last", trie.findPolicyForMetric( "x.abc.y" ).functionName() );
+    }
+}
@@ -0,0 +1,85 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.model.Interval;
+
+public class RetentionQueryPlannerTest {
+    // two days and one and a half hours
+    private static final long NOW = 178200;
+
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+    private RetentionQueryPlanner planner;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        // keeps [172800, 180000) at NOW
+        minutes = new RetentionLevel( "minutes", 60, 2, 3600, "hours" );
+        // keeps [0, 259200) at NOW
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, null );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+        retentions.addAccessLevelEntry( "^foo\\.", "minutes" );
+        planner = new RetentionQueryPlanner( retentions );
+    }
+
+    private static List<RetentionTable> tables( QueryPlan plan ) {
+        List<RetentionTable> result = new ArrayList<>();
+        plan.tables().forEach( result::add );
+        return result;
+    }
+
+    @Test
+    public void testFinestLevelPerSegment() {
+        QueryPlan plan = planner.plan( "foo.bar", new Interval( 100000, 176000 ), NOW, RetentionQueryPlanner.Resolution.FINEST );
+        assertEquals( 2, plan.segments().size() );
+        assertEquals( hours, plan.segments().get( 0 ).level() );
+        assertEquals( new Interval( 100000, 172800 ), plan.segments().get( 0 ).interval() );
+        assertEquals( minutes, plan.segments().get( 1 ).level() );
+        assertEquals( new Interval( 172800, 176000 ), plan.segments().get( 1 ).interval() );
+
+        assertEquals( Arrays.asList(
+                new RetentionTable( hours, 1 ),
+                new RetentionTable( minutes, 48 ) ), tables( plan ) );
+        assertEquals( 2, plan.tableCount() );
+    }
+
+    @Test
+    public void testCoarsestLevelCoversEverything() {
+        QueryPlan plan = planner.plan( "foo.bar", new Interval( 100000, 176000 ), NOW, RetentionQueryPlanner.Resolution.COARSEST );
+        assertEquals( 1, plan.segments().size() );
+        assertEquals( hours, plan.segments().get( 0 ).level() );
+        assertEquals( new Interval( 100000, 176000 ), plan.segments().get( 0 ).interval() );
+        assertEquals( Arrays.asList( new RetentionTable( hours, 1 ), new RetentionTable( hours, 2 ) ), tables( plan ) );
+    }
+
+    @Test
+    public void testExpiredAndFutureRangesAreLeftOut() {
+        QueryPlan plan = planner.plan( "foo.bar", new Interval( 0, 400000 ), 4 * 86400, RetentionQueryPlanner.Resolution.FINEST );
+        // hours keeps blocks 2 to 4, minutes only blocks 95 and 96
+        assertEquals( 3, plan.segments().size() );
+        assertEquals( new Interval( 172800, 342000 ), plan.segments().get( 0 ).interval() );
+        assertEquals( minutes, plan.segments().get( 1 ).level() );
+        assertEquals( new Interval( 342000, 349200 ), plan.segments().get( 1 ).interval() );
+        assertEquals( hours, plan.segments().get( 2 ).level() );
+        assertEquals( new Interval( 349200, 400000 ), plan.segments().get( 2 ).interval() );
+
+        assertTrue( planner.plan( "foo.bar", new Interval( 0, 1000 ), 4 * 86400, RetentionQueryPlanner.Resolution.FINEST ).isEmpty() );
+    }
+
+    @Test
+    public void testMetricWithoutAccessLevel() {
+        assertTrue( planner.plan( "unknown", new Interval( 0, 1000 ), NOW, RetentionQueryPlanner.Resolution.FINEST ).isEmpty() );
+    }
+}
@@ -0,0 +1,70 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetentionSchedulerTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+    private RetentionLevel days;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        minutes = new RetentionLevel( "minutes", 60, 2, 3600, "hours" );
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, "days" );
+        days = new RetentionLevel( "days", 86400, 10, 864000, null );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+        retentions.addLevel( days );
+    }
+
+    private static RetentionTask rollup( RetentionLevel level, long block, RetentionLevel target ) {
+        return new RetentionTask( RetentionTask.Type.ROLLUP, new RetentionTable( level, block ), target );
+    }
+
+    private static RetentionTask drop( RetentionLevel level, long block ) {
+        return new RetentionTask( RetentionTask.Type.DROP, new RetentionTable( level, block ), null );
+    }
+
+    @Test
+    public void testRollupBeforeDropAndOnlyOnce() {
+        RetentionScheduler subject = new RetentionScheduler( retentions );
+        subject.addTables( Arrays.asList( "gminutes0X00", "gminutes0X01", "gminutes0X02", "ghours0X00", "garfield" ) );
+        assertEquals( 4, subject.tableCount() );
+
+        assertEquals( Arrays.asList(
+                rollup( minutes, 0, hours ),
+                rollup( minutes, 1, hours ),
+                drop( minutes, 0 ) ), subject.advance( 7300 ) );
+        assertTrue( subject.advance( 7300 ).isEmpty() );
+        assertTrue( subject.advance( 7400 ).isEmpty() );
+
+        List<RetentionTask> tasks = subject.advance( 3 * 86400 + 10 );
+        assertEquals( Arrays.asList(
+                rollup( minutes, 2, hours ),
+                rollup( hours, 0, days ),
+                drop( minutes, 1 ),
+                drop( minutes, 2 ),
+                drop( hours, 0 ) ), tasks );
+        // only the days table the rollup of hours wrote to is left
+        assertEquals( 1, subject.tableCount() );
+        assertEquals( 0L, (long)subject.oldestTable( days ).get() );
+    }
+
+    @Test
+    public void testCascadeInOneTick() {
+        RetentionScheduler subject = new RetentionScheduler( retentions );
+        subject.addTable( new RetentionTable( minutes, 23 ) );
+        assertEquals( Arrays.asList(
+                rollup( minutes, 23, hours ),
+                rollup( hours, 0, days ) ), subject.advance( 86400 ) );
+    }
+}
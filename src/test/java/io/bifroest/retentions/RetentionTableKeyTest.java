@@ -0,0 +1,55 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetentionTableKeyTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        minutes = new RetentionLevel( "minutes", 60, 2, 3600, "hours" );
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, null );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+    }
+
+    @Test
+    public void testOrdinalsAreDenseAndStable() {
+        assertEquals( 0, retentions.ordinalOf( minutes ) );
+        assertEquals( 1, retentions.ordinalOf( hours ) );
+        assertEquals( hours, retentions.getLevelForOrdinal( 1 ).get() );
+        assertFalse( retentions.getLevelForOrdinal( 2 ).isPresent() );
+        assertEquals( -1, retentions.ordinalOf( new RetentionLevel( "days", 86400, 3, 86400, null ) ) );
+
+        RetentionLevel replacement = new RetentionLevel( "minutes", 60, 5, 3600, "hours" );
+        retentions.addLevel( replacement );
+        assertEquals( 0, retentions.ordinalOf( replacement ) );
+        assertEquals( -1, retentions.ordinalOf( minutes ) );
+    }
+
+    @Test
+    public void testRoundTrip() {
+        RetentionTable table = new RetentionTable( hours, RetentionTableKey.MAX_BLOCK );
+        long key = RetentionTableKey.encode( table, retentions );
+        assertEquals( 1, RetentionTableKey.ordinal( key ) );
+        assertEquals( RetentionTableKey.MAX_BLOCK, RetentionTableKey.block( key ) );
+        assertEquals( table, RetentionTableKey.decode( key, retentions ).get() );
+
+        assertEquals( RetentionTableKey.encode( 0, 2 ), RetentionTableKey.encode( 0, minutes, 7300 ) );
+        assertTrue( RetentionTableKey.encode( 0, 2 ) < RetentionTableKey.encode( 0, 3 ) );
+        assertFalse( RetentionTableKey.decode( RetentionTableKey.encode( 7, 1 ), retentions ).isPresent() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNegativeBlock() {
+        RetentionTableKey.encode( 0, -1 );
+    }
+}
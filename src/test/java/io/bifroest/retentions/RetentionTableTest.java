@@ -8,6 +8,7 @@ import static org.mockito.Mockito.when;
 
 import java.lang.annotation.Retention;
 import java.util.Optional;
+import java.util.regex.Matcher;
 
 import io.bifroest.commons.model.Interval;
 import org.junit.Test;
@@ -101,4 +102,37 @@ public class RetentionTableTest {
         assertThat(subject.contains(someBlockIndex * someBlockSize + someBlockSize - 1), is(true)); // just 1 before end
         assertThat(subject.contains(someBlockIndex * someBlockSize + someBlockSize), is(false)); // end is exclusive
     }
+
+    @Test
+    public void testParserAgreesWithRegex() {
+        String[] names = {
+                "gprecise0X042", "Gprecise0x042", "gprecise0X0", "gprecise0X42", "gprecise0Y042",
+                "g0X01", "ga0X01", "ga0X00X01", "ga0X0x01", "ga_b0X007", "ga-b0X01", "xa0X01",
+                "ga0X01a", "g0X00X01", "gaX0X01", "garfield", "", "g", "ga0X0\u0663" };
+        for ( String name : names ) {
+            Matcher matcher = RetentionTable.TABLE_REGEX.matcher( name );
+            int separator = RetentionTable.separatorIndex( name );
+            assertThat( name, separator >= 0, is( matcher.matches() ) );
+            if ( separator >= 0 ) {
+                assertThat( name, name.substring( 1, separator ), is( matcher.group( "level" ) ) );
+                assertThat( name, name.substring( separator + 3 ), is( matcher.group( "block" ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void testPoolReusesInstances() {
+        RetentionLevel retentionLevel = new RetentionLevel( "precise", 20, 10, 40, null );
+        RetentionConfiguration configuration = mock( RetentionConfiguration.class );
+        when( configuration.getLevelForName( "precise" ) ).thenReturn( Optional.of( retentionLevel ) );
+        when( configuration.getLevelForName( "unknown" ) ).thenReturn( Optional.empty() );
+        RetentionTablePool pool = new RetentionTablePool( configuration );
+
+        RetentionTable table = pool.get( retentionLevel, 42 );
+        assertThat( pool.get( "gprecise0X042" ) == table, is( true ) );
+        assertThat( pool.get( "GPRECISE0x042" ) == table, is( true ) );
+        assertThat( pool.get( retentionLevel, 42 ) == table, is( true ) );
+        assertThat( table.tableName(), is( "gprecise0X042" ) );
+        assertThat( pool.find( "gunknown0X01" ).isPresent(), is( false ) );
+    }
 }
@@ -0,0 +1,73 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.commons.model.Interval;
+import io.bifroest.commons.model.Metric;
+
+public class RollupPipelineTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel precise;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        precise = new RetentionLevel( "precise", 10, 3, 3600, "minutes" );
+        minutes = new RetentionLevel( "minutes", 60, 3, 7200, "hours" );
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, null );
+        retentions.addLevel( precise );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+        retentions.addFunctionEntry( "^max\\.", "max" );
+    }
+
+    private MetricSet sourceBlock( String name ) {
+        MetricSet block = new MetricSet( name, new Interval( 7200, 10800 ), 10 );
+        for ( int i = 0; i < block.values().length; i++ ) {
+            if ( i % 7 != 3 ) {
+                block.setValue( i, ( i * 31 ) % 17 );
+            }
+        }
+        return block;
+    }
+
+    @Test
+    public void testCascadeMatchesLevelByLevelAggregation() {
+        for ( String name : new String[] { "max.foo", "avg.foo" } ) {
+            MetricSet block = sourceBlock( name );
+            Map<RetentionLevel, MetricSet> result = new RollupPipeline( retentions ).rollup( name, precise, block );
+
+            assertEquals( Arrays.asList( minutes, hours ), new ArrayList<>( result.keySet() ) );
+
+            List<Metric> sourcePoints = new ArrayList<>( block );
+            MetricSet expectedMinutes = Aggregator.aggregate( name, sourcePoints, new Interval( 7200, 10800 ), 60, retentions );
+            assertEquals( expectedMinutes, result.get( minutes ) );
+
+            List<Metric> minutePoints = new ArrayList<>( expectedMinutes );
+            MetricSet expectedHours = Aggregator.aggregate( name, minutePoints, new Interval( 7200, 10800 ), 3600, retentions );
+            assertEquals( expectedHours, result.get( hours ) );
+        }
+    }
+
+    @Test
+    public void testLastLevelHasNothingToRollUp() {
+        assertTrue( new RollupPipeline( retentions ).rollup( "foo", hours, new MetricSet( "foo", new Interval( 0, 86400 ), 3600 ) ).isEmpty() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testUnsortedPointsAreRejected() {
+        MetricCursor points = MetricCursor.over( new long[] { 7300, 7200 }, new double[] { 1, 2 } );
+        new RollupPipeline( retentions ).rollup( "foo", precise, new Interval( 7200, 10800 ), points );
+    }
+}
@@ -0,0 +1,75 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingAggregatorTest {
+    private MutableRetentionConfiguration retentions;
+    private RetentionLevel minutes;
+    private RetentionLevel hours;
+    private List<String> emitted;
+    private StreamingAggregator subject;
+
+    @Before
+    public void setUp() {
+        retentions = new MutableRetentionConfiguration();
+        minutes = new RetentionLevel( "minutes", 60, 3, 3600, "hours" );
+        hours = new RetentionLevel( "hours", 3600, 3, 86400, null );
+        retentions.addLevel( minutes );
+        retentions.addLevel( hours );
+        retentions.addFunctionEntry( "^foo$", "max" );
+        retentions.addAccessLevelEntry( "^foo$", "minutes" );
+
+        emitted = new ArrayList<>();
+        subject = new StreamingAggregator( retentions, 30, ( name, level, timestamp, value ) -> emitted.add( name + "@" + level.name() + "@" + timestamp + "=" + value ) );
+    }
+
+    @Test
+    public void testBucketsAreEmittedOnceTheWatermarkPasses() {
+        assertTrue( subject.consume( "foo", 0, 1 ) );
+        assertTrue( subject.consume( "foo", 50, 3 ) );
+        assertTrue( subject.consume( "foo", 70, 2 ) );
+        // watermark is 40, the first minute is still open
+        assertTrue( emitted.isEmpty() );
+        assertEquals( 3, subject.openBuckets() );
+
+        // late, but still within the allowed lateness
+        assertTrue( subject.consume( "foo", 30, 5 ) );
+        assertTrue( subject.consume( "foo", 95, 1 ) );
+        assertEquals( 1, emitted.size() );
+        assertEquals( "foo@minutes@0=5.0", emitted.get( 0 ) );
+
+        // too late, the first minute is gone
+        assertFalse( subject.consume( "foo", 10, 100 ) );
+        assertEquals( 1, subject.droppedLatePoints() );
+
+        subject.flush();
+        assertEquals( 3, emitted.size() );
+        assertTrue( emitted.contains( "foo@minutes@60=2.0" ) );
+        assertTrue( emitted.contains( "foo@hours@0=5.0" ) );
+        assertEquals( 0, subject.openBuckets() );
+        assertEquals( 0, subject.openSeries() );
+    }
+
+    @Test
+    public void testQuietSeriesAreClosedByWallClock() {
+        subject.consume( "foo", 0, 1 );
+        subject.advanceWatermark( 3600 );
+        assertEquals( 2, emitted.size() );
+        assertEquals( 0, subject.openSeries() );
+    }
+
+    @Test
+    public void testMetricsWithoutLevelAreDropped() {
+        assertFalse( subject.consume( "bar", 0, 1 ) );
+        assertEquals( 1, subject.droppedUnclassifiedPoints() );
+        assertEquals( 0, subject.openBuckets() );
+    }
+}
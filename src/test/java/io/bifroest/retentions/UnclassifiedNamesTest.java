@@ -0,0 +1,41 @@
+package io.bifroest.retentions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class UnclassifiedNamesTest {
+    @Test
+    public void testLogsOncePerInterval() {
+        AtomicLong clock = new AtomicLong( 1000 );
+        UnclassifiedNames subject = new UnclassifiedNames( 100, clock::get );
+
+        assertTrue( subject.add( "a" ) );
+        assertFalse( subject.add( "b" ) );
+        clock.set( 1099 );
+        assertFalse( subject.add( "c" ) );
+        clock.set( 1100 );
+        assertTrue( subject.add( "d" ) );
+        assertFalse( subject.add( "e" ) );
+        assertEquals( 5, subject.total() );
+    }
+
+    @Test
+    public void testLookupsWithoutLevelAreCounted() {
+        MutableRetentionConfiguration retentions = new MutableRetentionConfiguration();
+        retentions.addLevel( new RetentionLevel( "precise", 10, 2, 100, null ) );
+        retentions.addAccessLevelEntry( "^abc", "precise" );
+        long before = UnclassifiedNames.instance().total();
+
+        retentions.findAccessLevelForMetric( "junk" );
+        retentions.findAccessLevelForMetric( "junk" );
+        retentions.findPolicyForMetric( "junk" );
+        retentions.findAccessLevelForMetric( "abc" );
+
+        assertEquals( before + 3, UnclassifiedNames.instance().total() );
+    }
+}
@@ -0,0 +1,78 @@
+package io.bifroest.retentions.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.bifroest.retentions.MutableRetentionConfiguration;
+import io.bifroest.retentions.RetentionConfigurationSnapshot;
+import io.bifroest.retentions.RetentionLevel;
+import io.bifroest.commons.statistics.cache.CacheTracker;
+
+public class AccessLevelMapCacheTest {
+    private AtomicInteger lookups;
+    private MutableRetentionConfiguration retentions;
+    private AccessLevelMapCache subject;
+
+    @Before
+    public void setUp() {
+        lookups = new AtomicInteger();
+        retentions = new MutableRetentionConfiguration() {
+            @Override
+            public int matchAccessLevel( String name ) {
+                lookups.incrementAndGet();
+                return super.matchAccessLevel( name );
+            }
+        };
+        retentions.addLevel( new RetentionLevel( "precise", 10, 2, 100, null ) );
+        retentions.addAccessLevelEntry( "^abc", "precise" );
+        subject = new AccessLevelMapCache( CacheTracker.storingIn( "AccessLevelMapCacheTest" ), "AccessLevelMapCacheTest" );
+    }
+
+    @Test
+    public void testNamesWithoutLevelAreCached() {
+        assertNull( subject.get( "junk", retentions ) );
+        assertNull( subject.get( "junk", retentions ) );
+        assertEquals( 1, lookups.get() );
+    }
+
+    @Test
+    public void testNamesWithoutLevelSurviveFunctionChanges() {
+        assertNull( subject.get( "junk", retentions ) );
+        retentions.addFunctionEntry( "^junk", "max" );
+
+        assertNull( subject.get( "junk", retentions ) );
+        assertEquals( 1, lookups.get() );
+    }
+
+    @Test
+    public void testNewAccessPatternsInvalidateNamesWithoutLevel() {
+        assertNull( subject.get( "junk", retentions ) );
+        assertEquals( "precise", subject.get( "abc", retentions ) );
+        retentions.addAccessLevelEntry( "^junk", "precise" );
+
+        assertEquals( "precise", subject.get( "junk", retentions ) );
+        assertEquals( "precise", subject.get( "abc", retentions ) );
+        assertEquals( 3, lookups.get() );
+    }
+
+    @Test
+    public void testOlderConfigurationsNeitherReadNorRollBackTheCache() {
+        RetentionConfigurationSnapshot older = retentions.snapshot();
+        retentions.addAccessLevelEntry( "^junk", "precise" );
+        RetentionConfigurationSnapshot newer = retentions.snapshot( older );
+        StripedLRUClassificationCache<MapCache.Entry<String>> cache = new StripedLRUClassificationCache<>( 64 );
+        AccessLevelMapCache shared = new AccessLevelMapCache( CacheTracker.storingIn( "AccessLevelMapCacheTest" ), "AccessLevelMapCacheTest", cache );
+
+        assertEquals( "precise", shared.get( "junk", newer ) );
+        assertNull( shared.get( "junk", older ) );
+        assertNull( shared.get( "other", older ) );
+        assertEquals( 1, cache.size() );
+        assertEquals( "precise", shared.get( "junk", newer ) );
+        assertNull( shared.get( "junk", older ) );
+    }
+}
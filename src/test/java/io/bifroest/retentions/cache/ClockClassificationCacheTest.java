@@ -0,0 +1,79 @@
+package io.bifroest.retentions.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClockClassificationCacheTest {
+
+    @Test
+    public void testGetReturnsWhatWasPut() {
+        ClockClassificationCache<String> subject = new ClockClassificationCache<>( 2 );
+        subject.put( "a", "max" );
+        subject.put( "b", "min" );
+        assertEquals( "max", subject.get( "a" ) );
+        assertEquals( "min", subject.get( "b" ) );
+        assertNull( subject.get( "c" ) );
+    }
+
+    @Test
+    public void testReferencedEntriesGetASecondChance() {
+        ClockClassificationCache<String> subject = new ClockClassificationCache<>( 2 );
+        subject.put( "a", "max" );
+        subject.put( "b", "min" );
+        subject.get( "a" );
+        subject.put( "c", "last" );
+
+        assertEquals( "max", subject.get( "a" ) );
+        assertNull( subject.get( "b" ) );
+        assertEquals( "last", subject.get( "c" ) );
+        assertEquals( 2, subject.size() );
+    }
+
+    @Test
+    public void testOverwritingKeepsSize() {
+        ClockClassificationCache<String> subject = new ClockClassificationCache<>( 2 );
+        subject.put( "a", "max" );
+        subject.put( "a", "min" );
+        assertEquals( "min", subject.get( "a" ) );
+        assertEquals( 1, subject.size() );
+    }
+
+    @Test
+    public void testClear() {
+        ClockClassificationCache<String> subject = new ClockClassificationCache<>( 2 );
+        subject.put( "a", "max" );
+        subject.clear();
+        assertNull( subject.get( "a" ) );
+        subject.put( "b", "min" );
+        subject.put( "c", "min" );
+        assertEquals( 2, subject.size() );
+    }
+
+    @Test( timeout = 10000 )
+    public void testSizeStaysBoundedUnderConcurrentWrites() throws InterruptedException {
+        final ClockClassificationCache<String> subject = new ClockClassificationCache<>( 100 );
+        List<Thread> threads = new ArrayList<>();
+        for ( int t = 0; t < 4; t++ ) {
+            final int offset = t;
+            Thread thread = new Thread( () -> {
+                for ( int i = 0; i < 10000; i++ ) {
+                    String name = "metric." + ( i * 4 + offset );
+                    subject.put( name, name );
+                    subject.get( "metric." + i );
+                }
+            } );
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        assertTrue( subject.size() <= subject.maxSize() );
+    }
+}
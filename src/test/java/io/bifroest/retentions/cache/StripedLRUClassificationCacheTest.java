@@ -0,0 +1,48 @@
+package io.bifroest.retentions.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StripedLRUClassificationCacheTest {
+
+    @Test
+    public void testSizeCountsDistinctNames() {
+        StripedLRUClassificationCache<String> subject = new StripedLRUClassificationCache<>( 1024 );
+        subject.put( "a", "max" );
+        subject.put( "b", "min" );
+        subject.put( "a", "last" );
+
+        assertEquals( 2, subject.size() );
+        assertEquals( "last", subject.get( "a" ) );
+    }
+
+    @Test
+    public void testSizeStaysWithinCapacityWhenEvicting() {
+        StripedLRUClassificationCache<String> subject = new StripedLRUClassificationCache<>( 64 );
+        for ( int i = 0; i < 1000; i++ ) {
+            subject.put( "name" + i, "max" );
+        }
+
+        assertTrue( subject.size() <= subject.maxSize() );
+        int present = 0;
+        for ( int i = 0; i < 1000; i++ ) {
+            if ( subject.get( "name" + i ) != null ) {
+                present++;
+            }
+        }
+        assertEquals( present, subject.size() );
+    }
+
+    @Test
+    public void testClearResetsSize() {
+        StripedLRUClassificationCache<String> subject = new StripedLRUClassificationCache<>( 64 );
+        subject.put( "a", "max" );
+        subject.clear();
+
+        assertEquals( 0, subject.size() );
+        assertNull( subject.get( "a" ) );
+    }
+}
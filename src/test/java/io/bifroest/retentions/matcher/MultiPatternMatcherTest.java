@@ -0,0 +1,89 @@
+package io.bifroest.retentions.matcher;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class MultiPatternMatcherTest {
+    private static final String[] REGEXES = {
+            "\\.System\\.CPU\\.(Interrupts|ContextSwitches)$",
+            "\\.System\\.CPU\\.IrqStats\\.[^.]*$",
+            ".*\\.Bifroest\\.(Bifroest|Aggregator|StreamRewriter)\\..*",
+            "^abc$",
+            "ab?c",
+            "x+yz",
+            "fo{2}bar",
+            "(?i)loud",
+            "a|b",
+            "[.]Disk\\.",
+            "\\d+\\.Memory",
+            "Net[wW]ork\\.Bytes",
+            ".*"
+    };
+
+    private static final String[] NAMES = {
+            "host.System.CPU.Interrupts",
+            "host.System.CPU.IrqStats.eth0",
+            "host.System.CPU.IrqStats.eth0.foo",
+            "x.Bifroest.Aggregator.cache",
+            "abc",
+            "ac",
+            "xxxyz",
+            "foobar",
+            "fooobar",
+            "LOUD",
+            "zzz",
+            "host.Disk.sda",
+            "host42.Memory",
+            "host.Network.Bytes",
+            ""
+    };
+
+    private static int naiveFirstMatch( List<Pattern> patterns, String name, int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+            if ( patterns.get( i ).matcher( name ).find() ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testFirstMatchIsTheSameAsWalkingThePatterns() {
+        // drop the catch-all patterns from the front one by one so every pattern gets a chance to be first
+        for ( int skip = 0; skip < REGEXES.length; skip++ ) {
+            List<Pattern> patterns = new ArrayList<>();
+            for ( String regex : Arrays.copyOfRange( REGEXES, skip, REGEXES.length ) ) {
+                patterns.add( Pattern.compile( regex ) );
+            }
+            MultiPatternMatcher subject = new MultiPatternMatcher( patterns );
+            for ( String name : NAMES ) {
+                assertEquals( name, naiveFirstMatch( patterns, name, 0, patterns.size() ), subject.firstMatch( name ) );
+                for ( int from = 0; from < patterns.size(); from++ ) {
+                    assertEquals( name, naiveFirstMatch( patterns, name, from, patterns.size() ), subject.firstMatch( name, from, patterns.size() ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyPatternList() {
+        MultiPatternMatcher subject = new MultiPatternMatcher( new ArrayList<Pattern>() );
+        assertEquals( -1, subject.firstMatch( "foo" ) );
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals( ".System.CPU.IrqStats.", LiteralExtractor.requiredLiteral( Pattern.compile( "\\.System\\.CPU\\.IrqStats\\.[^.]*$" ) ) );
+        assertEquals( "bar", LiteralExtractor.requiredLiteral( Pattern.compile( "fo{2}bar" ) ) );
+        assertEquals( "yz", LiteralExtractor.requiredLiteral( Pattern.compile( "x+yz" ) ) );
+        assertEquals( "", LiteralExtractor.requiredLiteral( Pattern.compile( "a|b" ) ) );
+        assertEquals( "", LiteralExtractor.requiredLiteral( Pattern.compile( "(?i)loud" ) ) );
+        assertEquals( "", LiteralExtractor.requiredLiteral( Pattern.compile( "loud", Pattern.CASE_INSENSITIVE ) ) );
+    }
+}
@@ -0,0 +1,133 @@
+package io.bifroest.retentions.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class SegmentTrieMatcherTest {
+    private static final String[] REGEXES = {
+            "\\.System\\.CPU\\.(Interrupts|ContextSwitches)$",
+            "\\.System\\.CPU\\.IrqStats\\.[^.]*$",
+            ".*\\.Bifroest\\.(Bifroest|Aggregator|StreamRewriter)\\..*",
+            "^abc$",
+            "^servers\\.[^.]+\\.load$",
+            "^servers\\.(?:web|db)\\.",
+            "^a\\.[^.]*\\.b\\..*$",
+            "\\.Disk\\.",
+            ".*\\.Memory\\.[^.]+$",
+            "^$",
+            "^x\\.$",
+            "ab?c",
+            "(?i)loud",
+            "[.]Disk\\.",
+            "^servers\\.web",
+            "Net[wW]ork\\.Bytes",
+            ".*"
+    };
+
+    private static final String[] NAMES = {
+            "host.System.CPU.Interrupts",
+            "System.CPU.Interrupts",
+            ".System.CPU.Interrupts",
+            "host.System.CPU.IrqStats.eth0",
+            "host.System.CPU.IrqStats.",
+            "host.System.CPU.IrqStats.eth0.foo",
+            "x.Bifroest.Aggregator.cache",
+            "Bifroest.Aggregator.cache",
+            "x.Bifroest.Aggregator",
+            "abc",
+            "abc.d",
+            "servers.web01.load",
+            "servers..load",
+            "servers.web.load",
+            "servers.db",
+            "servers.webfoo.x",
+            "a..b.c",
+            "a.x.b.",
+            "a.x.b",
+            "host.Disk.sda",
+            "Disk.sda",
+            "host.Memory.free",
+            "host.Memory.",
+            "",
+            "x.",
+            "x",
+            "ac",
+            "LOUD",
+            "host.Network.Bytes",
+            "host.System.CPU.Interrupts\n",
+            "abc\n",
+            "a.x.b.\n"
+    };
+
+    private static int naiveFirstMatch( List<Pattern> patterns, String name, int from, int to ) {
+        for ( int i = from; i < to; i++ ) {
+            if ( patterns.get( i ).matcher( name ).find() ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testFirstMatchIsTheSameAsWalkingThePatterns() {
+        for ( int skip = 0; skip < REGEXES.length; skip++ ) {
+            List<Pattern> patterns = new ArrayList<>();
+            for ( String regex : Arrays.copyOfRange( REGEXES, skip, REGEXES.length ) ) {
+                patterns.add( Pattern.compile( regex ) );
+            }
+            SegmentTrieMatcher subject = new SegmentTrieMatcher( patterns );
+            for ( String name : NAMES ) {
+                PatternMatcher.Matches matches = subject.candidates( name );
+                for ( int from = 0; from < patterns.size(); from++ ) {
+                    for ( int to = from; to <= patterns.size(); to++ ) {
+                        assertEquals( name + " " + from + " " + to, naiveFirstMatch( patterns, name, from, to ), matches.firstMatch( from, to ) );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentPatternsGoIntoTheTrie() {
+        List<Pattern> patterns = new ArrayList<>();
+        for ( String regex : REGEXES ) {
+            patterns.add( Pattern.compile( regex ) );
+        }
+        assertEquals( 11, new SegmentTrieMatcher( patterns ).trieSize() );
+    }
+
+    @Test
+    public void testShapes() {
+        SegmentPattern exact = SegmentPattern.parse( Pattern.compile( "^a\\.(b|c)\\.[^.]+$" ) );
+        assertEquals( true, exact.anchored );
+        assertEquals( false, exact.more );
+        assertEquals( 3, exact.segments.size() );
+        assertEquals( Arrays.asList( "b", "c" ), exact.segments.get( 1 ).literals );
+        assertEquals( SegmentPattern.Kind.NON_EMPTY, exact.segments.get( 2 ).kind );
+
+        SegmentPattern contains = SegmentPattern.parse( Pattern.compile( ".*\\.a\\..*" ) );
+        assertEquals( false, contains.anchored );
+        assertEquals( true, contains.more );
+
+        assertNotNull( SegmentPattern.parse( Pattern.compile( "\\.a\\-b$" ) ) );
+        assertNull( SegmentPattern.parse( Pattern.compile( "^a\\.b" ) ) );
+        assertNull( SegmentPattern.parse( Pattern.compile( "^a\\.b[0-9]$" ) ) );
+        assertNull( SegmentPattern.parse( Pattern.compile( "^a\\.\\d$" ) ) );
+        assertNull( SegmentPattern.parse( Pattern.compile( "^a\\.(b\\.c)$" ) ) );
+        assertNull( SegmentPattern.parse( Pattern.compile( "^a$", Pattern.CASE_INSENSITIVE ) ) );
+    }
+
+    @Test
+    public void testEmptyPatternList() {
+        SegmentTrieMatcher subject = new SegmentTrieMatcher( new ArrayList<Pattern>() );
+        assertEquals( -1, subject.candidates( "foo" ).firstMatch( 0, 0 ) );
+    }
+}
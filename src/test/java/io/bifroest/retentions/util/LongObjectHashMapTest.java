@@ -0,0 +1,53 @@
+package io.bifroest.retentions.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongObjectHashMapTest {
+    @Test
+    public void testBehavesLikeHashMap() {
+        Random random = new Random( 17 );
+        LongObjectHashMap<String> subject = new LongObjectHashMap<>( 4 );
+        Map<Long, String> expected = new HashMap<>();
+        for ( int i = 0; i < 100000; i++ ) {
+            // few distinct keys, clustered, including 0 and negative ones
+            long key = random.nextInt( 2000 ) - 100 + ( random.nextBoolean() ? 0 : 1L << 48 );
+            switch ( random.nextInt( 3 ) ) {
+            case 0:
+                assertEquals( expected.put( key, "v" + i ), subject.put( key, "v" + i ) );
+                break;
+            case 1:
+                assertEquals( expected.remove( key ), subject.remove( key ) );
+                break;
+            default:
+                assertEquals( expected.get( key ), subject.get( key ) );
+                assertEquals( expected.containsKey( key ), subject.containsKey( key ) );
+            }
+            assertEquals( expected.size(), subject.size() );
+        }
+        Map<Long, String> visited = new HashMap<>();
+        subject.forEach( visited::put );
+        assertEquals( expected, visited );
+    }
+
+    @Test
+    public void testComputeIfAbsentAndClear() {
+        LongObjectHashMap<StringBuilder> subject = new LongObjectHashMap<>();
+        subject.computeIfAbsent( 5, key -> new StringBuilder() ).append( 'a' );
+        subject.computeIfAbsent( 5, key -> new StringBuilder() ).append( 'b' );
+        assertEquals( "ab", subject.get( 5 ).toString() );
+        assertEquals( 1, subject.size() );
+        subject.clear();
+        assertTrue( subject.isEmpty() );
+        assertNull( subject.get( 5 ) );
+        assertFalse( subject.containsKey( 5 ) );
+    }
+}